@@ -0,0 +1,98 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decouples a {@link ReportSink} from the thread that produces the reports: reports are put into a bounded
+ * queue and published to the wrapped sink by a dedicated thread. When the queue is full (i.e. the sink
+ * cannot keep up), new reports are dropped instead of blocking.
+ */
+public class AsyncReportSink implements ReportSink {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final ReportSink delegate;
+    private final BlockingQueue<List<String>> queue;
+    private final LongAdder droppedReports = new LongAdder();
+    private final Thread publisher;
+    private volatile boolean keepRunning = true;
+
+    public AsyncReportSink(ReportSink delegate, int queueCapacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.publisher = new Thread(this::publishQueuedReports);
+        this.publisher.setDaemon(true);
+        this.publisher.setName("Profiler report sink " + delegate.getClass().getSimpleName());
+        this.publisher.start();
+    }
+
+    @Override
+    public void publish(List<String> reportLines) {
+        if (!keepRunning || !queue.offer(reportLines)) {
+            droppedReports.increment();
+        }
+    }
+
+    /**
+     * Stops accepting new reports and waits (a limited amount of time) for the publishing thread to publish
+     * the reports still in the queue. The wrapped sink is closed by the publishing thread once it is done
+     * with it, so a sink that is still being written to when the wait times out is closed later, never
+     * while it is being written to.
+     */
+    @Override
+    public void close() {
+        keepRunning = false;
+        try {
+            publisher.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ignored) {
+            // ignored exception
+        }
+    }
+
+    public long getDroppedReports() {
+        return droppedReports.longValue();
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void publishQueuedReports() {
+        while (keepRunning || !queue.isEmpty()) {
+            try {
+                List<String> reportLines = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (reportLines != null) {
+                    delegate.publish(reportLines);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Profiler report sink error: " + e.getMessage());
+            }
+        }
+        try {
+            delegate.close();
+        } catch (RuntimeException e) {
+            System.err.println("Profiler report sink error: " + e.getMessage());
+        }
+    }
+
+}
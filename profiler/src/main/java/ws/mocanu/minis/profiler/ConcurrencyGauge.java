@@ -0,0 +1,157 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the concurrent executions of a code point: how many are in flight right now, the peak concurrency
+ * (overall and per interval) and the latency of the executions grouped by the concurrency level seen when
+ * they started. The in-flight counter is a single {@link AtomicLong}, since each execution needs the exact
+ * level it started at: entering and leaving a point costs one atomic increment or decrement on it, which
+ * the threads running the point do contend on. The peaks are only written when exceeded, and the latency
+ * breakdown is striped ({@link LongAdder}).
+ */
+public class ConcurrencyGauge {
+
+    /**
+     * The number of concurrency level buckets: 1, 2, 3-4, 5-8, ..., 513 and more.
+     */
+    public static final int LEVEL_BUCKETS = 11;
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong intervalPeak = new AtomicLong();
+    private final AtomicLong overallPeak = new AtomicLong();
+    private volatile long lastIntervalPeak = 0;
+
+    private final LongAdder[] runsByLevel = new LongAdder[LEVEL_BUCKETS];
+    private final LongAdder[] runTimeByLevel = new LongAdder[LEVEL_BUCKETS];
+
+    public ConcurrencyGauge() {
+        for (int index = 0; index < LEVEL_BUCKETS; index++) {
+            runsByLevel[index] = new LongAdder();
+            runTimeByLevel[index] = new LongAdder();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Marks the start of an execution.
+     *
+     * @return the concurrency level seen by the started execution (including itself)
+     */
+    public long enter() {
+        long level = Math.max(1, inFlight.incrementAndGet());
+        updatePeak(intervalPeak, level);
+        updatePeak(overallPeak, level);
+        return level;
+    }
+
+    /**
+     * Marks the end of an execution.
+     *
+     * @param level         the concurrency level returned by {@link #enter()} for this execution
+     * @param executionTime the duration of the execution, in nanoseconds
+     */
+    public void exit(long level, long executionTime) {
+        inFlight.decrementAndGet();
+        int bucket = levelBucket(level);
+        runsByLevel[bucket].increment();
+        runTimeByLevel[bucket].add(executionTime);
+    }
+
+    /**
+     * Marks the end of an execution that is not recorded.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Closes the current peak interval: the peak of the interval becomes available through
+     * {@link #getLastIntervalPeak()} and a new interval starts from the current concurrency.
+     */
+    public void rollInterval() {
+        lastIntervalPeak = intervalPeak.getAndSet(Math.max(0, inFlight.get()));
+    }
+
+    /**
+     * Resets the peaks and the latency breakdown. The in-flight executions are still tracked.
+     */
+    public void reset() {
+        long current = Math.max(0, inFlight.get());
+        intervalPeak.set(current);
+        overallPeak.set(current);
+        lastIntervalPeak = 0;
+        for (int index = 0; index < LEVEL_BUCKETS; index++) {
+            runsByLevel[index].reset();
+            runTimeByLevel[index].reset();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public long getInFlight() {
+        return Math.max(0, inFlight.get());
+    }
+
+    public long getOverallPeak() {
+        return overallPeak.get();
+    }
+
+    public long getLastIntervalPeak() {
+        return lastIntervalPeak;
+    }
+
+    public long getRunsAtLevel(int bucket) {
+        return runsByLevel[bucket].longValue();
+    }
+
+    public long getRunTimeAtLevel(int bucket) {
+        return runTimeByLevel[bucket].longValue();
+    }
+
+    /**
+     * @return the description of the concurrency levels of a bucket, e.g. "5-8"
+     */
+    public static String levelBucketName(int bucket) {
+        if (bucket == 0) {
+            return "1";
+        }
+        if (bucket == LEVEL_BUCKETS - 1) {
+            return ((1L << (bucket - 1)) + 1) + "+";
+        }
+        long lower = (1L << (bucket - 1)) + 1;
+        long upper = 1L << bucket;
+        return lower == upper ? String.valueOf(upper) : lower + "-" + upper;
+    }
+
+    private static int levelBucket(long level) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, level - 1));
+        return Math.min(bucket, LEVEL_BUCKETS - 1);
+    }
+
+    private static void updatePeak(AtomicLong peak, long level) {
+        long currentPeak = peak.get();
+        while (level > currentPeak && !peak.compareAndSet(currentPeak, level)) {
+            currentPeak = peak.get();
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streams the changes of a profiler's statistics to the subscribed HTTP clients, as Server-Sent Events
+ * over a chunked HTTP response. Once per second, the deltas of the code points that changed are computed
+ * (once, whatever the number of subscribers) into a compact JSON event which is then queued for all the
+ * subscribers. Each subscriber has its own writer thread and a small bounded queue, so a slow or stalled
+ * client never delays the others nor the tick; a client that falls behind by more than
+ * {@link #MAX_PENDING_EVENTS} events is disconnected. The thread stops by itself when the last subscriber
+ * goes away.
+ */
+public class DeltaStreamer extends Thread {
+
+    private static final long INTERVAL_MILLIS = 1000;
+    private static final long HEARTBEAT_MILLIS = 15000;
+    private static final int MAX_PENDING_EVENTS = 8;
+
+    private static final byte[] RESPONSE_HEADERS = ("HTTP/1.1 200 OK\r\n"
+                                                    + "Server: Profiler HTTP Control\r\n"
+                                                    + "Content-type: text/event-stream\r\n"
+                                                    + "Cache-Control: no-cache\r\n"
+                                                    + "Transfer-Encoding: chunked\r\n"
+                                                    + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final Profiler streamedProfiler;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The state of the points seen at the previous tick, mapped to their code points. Only the points whose
+     * number of runs changed get their histogram copied, and only its non-empty buckets.
+     */
+    private Map<String, StreamedPoint> previousPoints = new HashMap<>();
+    private long lastEventTimestamp = System.currentTimeMillis();
+    private boolean stopped = false;
+
+    public DeltaStreamer(Profiler streamedProfiler) {
+        this.streamedProfiler = streamedProfiler;
+        this.setDaemon(true);
+        this.setName("Profiler delta streamer");
+    }
+
+    /**
+     * Starts streaming to the given client socket: registers the client, whose writer thread then sends the
+     * HTTP response headers followed by the events.
+     *
+     * @return false if the streamer has stopped and cannot take new subscribers
+     */
+    public synchronized boolean subscribe(Socket socket) throws IOException {
+        if (stopped) {
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(socket);
+        subscriber.pendingChunks.offer(RESPONSE_HEADERS);
+        subscribers.add(subscriber);
+        subscriber.start();
+        if (getState() == State.NEW) {
+            start();
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            String event = computeDeltaEvent();
+            long currentTimestamp = System.currentTimeMillis();
+            if (event == null && currentTimestamp - lastEventTimestamp >= HEARTBEAT_MILLIS) {
+                event = ": heartbeat\n\n";
+            }
+            if (event != null) {
+                lastEventTimestamp = currentTimestamp;
+                publish(event);
+            }
+
+            synchronized (this) {
+                if (subscribers.isEmpty()) {
+                    stopped = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the SSE event with the deltas of the changed points, or null if no point changed
+     */
+    private String computeDeltaEvent() {
+        Map<String, StreamedPoint> currentPoints = new HashMap<>();
+        StringBuilder points = new StringBuilder();
+        streamedProfiler.visitPoints((link, parentPoint, depth) -> {
+            StreamedPoint previous = previousPoints.get(link.getPoint());
+            ExecRecord record = link.getRecord();
+            long totalRuns = record.getNrOfRuns();
+            if (previous != null && previous.runs == totalRuns) {
+                currentPoints.put(link.getPoint(), previous);
+                return;
+            }
+
+            StreamedPoint current = new StreamedPoint(totalRuns, record.getTotalRunTime(), record.getHistogram().getSparseCounts());
+            currentPoints.put(link.getPoint(), current);
+            if (previous != null && previous.runs > totalRuns) {
+                previous = null; // the record was reset, everything is new
+            }
+            long runs = previous != null ? totalRuns - previous.runs : totalRuns;
+            if (runs <= 0) {
+                return;
+            }
+            long runTime = previous != null ? current.totalRunTime - previous.totalRunTime : current.totalRunTime;
+            SparseHistogram histogram = previous != null ? current.histogram.minus(previous.histogram) : current.histogram;
+            points.append(points.length() == 0 ? "" : ",")
+                  .append("{\"point\":").append(Json.quote(link.getPoint()))
+                  .append(",\"parent\":").append(Json.quote(parentPoint))
+                  .append(",\"depth\":").append(depth)
+                  .append(",\"runs\":").append(runs)
+                  .append(",\"totalRuns\":").append(totalRuns)
+                  .append(",\"avgMs\":").append(Json.millis(Math.max(0, runTime) / runs))
+                  .append(",\"p99Ms\":").append(Json.millis(histogram.getValueAtPercentile(99)))
+                  .append('}');
+        });
+        previousPoints = currentPoints;
+
+        if (points.length() == 0) {
+            return null;
+        }
+        return "data: {\"timestamp\":" + System.currentTimeMillis() + ",\"points\":[" + points + "]}\n\n";
+    }
+
+    private void publish(String event) {
+        byte[] data = event.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(data.length + 16);
+        byte[] chunkHeader = (Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        chunk.write(chunkHeader, 0, chunkHeader.length);
+        chunk.write(data, 0, data.length);
+        chunk.write('\r');
+        chunk.write('\n');
+        byte[] chunkBytes = chunk.toByteArray();
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.pendingChunks.offer(chunkBytes)) {
+                // the client doesn't keep up with the events
+                disconnect(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Removes the given subscriber and closes its socket, which also unblocks its writer thread if it is
+     * stuck writing to a stalled client.
+     */
+    private void disconnect(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.interrupt();
+        try {
+            subscriber.socket.close();
+        } catch (IOException ignored) {
+            // ignored exception
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * What the delta of a point is computed from: its runs, its total run time (nanoseconds) and the
+     * non-empty buckets of its histogram, as seen at a tick.
+     */
+    private static class StreamedPoint {
+
+        private final long runs;
+        private final long totalRunTime;
+        private final SparseHistogram histogram;
+
+        private StreamedPoint(long runs, long totalRunTime, SparseHistogram histogram) {
+            this.runs = runs;
+            this.totalRunTime = totalRunTime;
+            this.histogram = histogram;
+        }
+
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the queued chunks to one client, on its own thread.
+     */
+    private class Subscriber extends Thread {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final BlockingQueue<byte[]> pendingChunks = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+
+        private Subscriber(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+            this.setDaemon(true);
+            this.setName("Profiler delta streamer " + socket.getRemoteSocketAddress());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    out.write(pendingChunks.take());
+                    out.flush();
+                }
+            } catch (InterruptedException | IOException e) {
+                // disconnected for falling behind, or the client went away
+                disconnect(this);
+            }
+        }
+
+    }
+
+}
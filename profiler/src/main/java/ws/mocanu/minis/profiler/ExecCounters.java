@@ -0,0 +1,226 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+/**
+ * A copy of the counters of a code point, together with its position in the call tree. Used for shipping
+ * the statistics of a profiler to another process, either as totals or as deltas between two copies. The
+ * counters of a code point for one of its tag sets (see {@link TagSet}) are copied separately, and carry the
+ * tag set in canonical form. The histograms only keep their non-empty buckets (see {@link SparseHistogram}).
+ */
+public class ExecCounters {
+
+    private final String point;
+    private final String parentPoint;
+    private final String tags;
+    private final long nrOfRuns;
+    private final long totalRunTime;
+    private final long maxRunTime;
+    private final long nrOfMeasuredRuns;
+    private final long measuredRunTime;
+    private final long totalCpuTime;
+    private final long totalAllocatedBytes;
+    private final SparseHistogram histogram;
+    private final long nrOfFailures;
+    private final long failureRunTime;
+    private final long maxFailureRunTime;
+    private final SparseHistogram failureHistogram;
+
+    public ExecCounters(String point, String parentPoint, long nrOfRuns, long totalRunTime, long maxRunTime,
+                        long nrOfMeasuredRuns, long measuredRunTime, long totalCpuTime, long totalAllocatedBytes,
+                        long[] histogramCounts, long nrOfFailures, long failureRunTime, long maxFailureRunTime,
+                        long[] failureHistogramCounts) {
+        this(point, parentPoint, null, nrOfRuns, totalRunTime, maxRunTime, nrOfMeasuredRuns, measuredRunTime,
+             totalCpuTime, totalAllocatedBytes, histogramCounts, nrOfFailures, failureRunTime, maxFailureRunTime,
+             failureHistogramCounts);
+    }
+
+    /**
+     * @param tags the tag set of these counters in canonical form, or null for the counters of the whole point
+     */
+    public ExecCounters(String point, String parentPoint, String tags, long nrOfRuns, long totalRunTime,
+                        long maxRunTime, long nrOfMeasuredRuns, long measuredRunTime, long totalCpuTime,
+                        long totalAllocatedBytes, long[] histogramCounts, long nrOfFailures, long failureRunTime,
+                        long maxFailureRunTime, long[] failureHistogramCounts) {
+        this(point, parentPoint, tags, nrOfRuns, totalRunTime, maxRunTime, nrOfMeasuredRuns, measuredRunTime,
+             totalCpuTime, totalAllocatedBytes, SparseHistogram.of(histogramCounts), nrOfFailures, failureRunTime,
+             maxFailureRunTime, SparseHistogram.of(failureHistogramCounts));
+    }
+
+    ExecCounters(String point, String parentPoint, String tags, long nrOfRuns, long totalRunTime, long maxRunTime,
+                 long nrOfMeasuredRuns, long measuredRunTime, long totalCpuTime, long totalAllocatedBytes,
+                 SparseHistogram histogram, long nrOfFailures, long failureRunTime, long maxFailureRunTime,
+                 SparseHistogram failureHistogram) {
+        this.point = point;
+        this.parentPoint = parentPoint;
+        this.tags = tags;
+        this.nrOfRuns = nrOfRuns;
+        this.totalRunTime = totalRunTime;
+        this.maxRunTime = maxRunTime;
+        this.nrOfMeasuredRuns = nrOfMeasuredRuns;
+        this.measuredRunTime = measuredRunTime;
+        this.totalCpuTime = totalCpuTime;
+        this.totalAllocatedBytes = totalAllocatedBytes;
+        this.histogram = histogram;
+        this.nrOfFailures = nrOfFailures;
+        this.failureRunTime = failureRunTime;
+        this.maxFailureRunTime = maxFailureRunTime;
+        this.failureHistogram = failureHistogram;
+    }
+
+    /**
+     * Copies the current counters of the given record.
+     *
+     * @param parentPoint the point of the parent in the call tree, or null for the points directly under root
+     */
+    public static ExecCounters of(String point, String parentPoint, ExecRecord record) {
+        return new ExecCounters(point, parentPoint, null, record.getNrOfRuns(), record.getTotalRunTime(),
+                                record.getHistogram().getMaxValue(), record.getNrOfMeasuredRuns(),
+                                record.getMeasuredRunTime(), record.getTotalCpuTime(),
+                                record.getTotalAllocatedBytes(), record.getHistogram().getSparseCounts(),
+                                record.getNrOfFailures(), record.getFailureRunTime(),
+                                record.getMaxFailureRunTime(), sparseCounts(record.getFailureHistogram()));
+    }
+
+    /**
+     * Copies the current counters of the given record of a tag set of a code point. The record only has run
+     * and failure counters, the others are left at 0.
+     *
+     * @param tags the tag set in canonical form
+     */
+    static ExecCounters of(String point, String parentPoint, String tags, TaggedRecord record) {
+        return new ExecCounters(point, parentPoint, tags, record.getNrOfRuns(), record.getTotalRunTime(),
+                                record.getHistogram().getMaxValue(), 0, 0, 0, 0, record.getHistogram().getSparseCounts(),
+                                record.getNrOfFailures(), record.getFailureRunTime(), record.getMaxFailureRunTime(),
+                                sparseCounts(record.getFailureHistogram()));
+    }
+
+    /**
+     * Computes the difference between these counters and some older copy of the same counters. If the
+     * record was reset in between, these counters are returned as they are.
+     *
+     * @param previous the older copy of the counters, or null if there is none
+     * @return the counters accumulated since the previous copy; the maximum run time is kept as is
+     */
+    public ExecCounters minus(ExecCounters previous) {
+        if (previous == null || nrOfRuns < previous.nrOfRuns) {
+            return this;
+        }
+        return new ExecCounters(point, parentPoint, tags, nrOfRuns - previous.nrOfRuns, totalRunTime - previous.totalRunTime,
+                                maxRunTime, nrOfMeasuredRuns - previous.nrOfMeasuredRuns,
+                                measuredRunTime - previous.measuredRunTime, totalCpuTime - previous.totalCpuTime,
+                                totalAllocatedBytes - previous.totalAllocatedBytes,
+                                histogram.minus(previous.histogram), nrOfFailures - previous.nrOfFailures,
+                                failureRunTime - previous.failureRunTime, maxFailureRunTime,
+                                failureHistogram.minus(previous.failureHistogram));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public String getPoint() {
+        return point;
+    }
+
+    public String getParentPoint() {
+        return parentPoint;
+    }
+
+    /**
+     * @return the tag set of these counters in canonical form, or null for the counters of the whole point
+     */
+    public String getTags() {
+        return tags;
+    }
+
+    /**
+     * @return the key identifying these counters among the ones of a profiler: the point, followed by the
+     *     tag set in braces if there is one
+     */
+    public String getKey() {
+        return tags == null ? point : point + "{" + tags + "}";
+    }
+
+    public long getNrOfRuns() {
+        return nrOfRuns;
+    }
+
+    public long getTotalRunTime() {
+        return totalRunTime;
+    }
+
+    public long getMaxRunTime() {
+        return maxRunTime;
+    }
+
+    public long getNrOfMeasuredRuns() {
+        return nrOfMeasuredRuns;
+    }
+
+    public long getMeasuredRunTime() {
+        return measuredRunTime;
+    }
+
+    public long getTotalCpuTime() {
+        return totalCpuTime;
+    }
+
+    public long getTotalAllocatedBytes() {
+        return totalAllocatedBytes;
+    }
+
+    /**
+     * @return the bucket counts of the run times, indexed like the ones of {@link LatencyHistogram#getCounts()}
+     */
+    public long[] getHistogramCounts() {
+        return histogram.toCounts();
+    }
+
+    SparseHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getNrOfFailures() {
+        return nrOfFailures;
+    }
+
+    public long getFailureRunTime() {
+        return failureRunTime;
+    }
+
+    public long getMaxFailureRunTime() {
+        return maxFailureRunTime;
+    }
+
+    /**
+     * @return the bucket counts of the failed run times, indexed like the ones of
+     *     {@link LatencyHistogram#getCounts()}
+     */
+    public long[] getFailureHistogramCounts() {
+        return failureHistogram.toCounts();
+    }
+
+    SparseHistogram getFailureHistogram() {
+        return failureHistogram;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static SparseHistogram sparseCounts(LatencyHistogram histogram) {
+        return histogram != null ? histogram.getSparseCounts() : SparseHistogram.EMPTY;
+    }
+
+}
@@ -16,8 +16,10 @@ limitations under the License.
 
 package ws.mocanu.minis.profiler;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -28,10 +30,12 @@ import java.util.Set;
 public class ExecLink {
 
     private final String point;
+    private final ExecRecord record;
     private final Set<ExecLink> children;
 
-    public ExecLink(String point) {
+    public ExecLink(String point, ExecRecord record) {
         this.point = point;
+        this.record = record;
         this.children = Collections.synchronizedSet(new LinkedHashSet<>());
     }
 
@@ -56,11 +60,31 @@ public class ExecLink {
         return point;
     }
 
+    /**
+     * @return the record of the executions of this link's code point, or null for the root link
+     */
+    public ExecRecord getRecord() {
+        return record;
+    }
+
     public Set<ExecLink> getChildren() {
         return children;
     }
 
+    /**
+     * @return a copy of the children of this link, safe to iterate while new children are being added
+     */
+    public List<ExecLink> getChildrenCopy() {
+        synchronized (children) {
+            return new ArrayList<>(children);
+        }
+    }
+
     public void addChild(ExecLink link) {
         children.add(link);
     }
+
+    public void removeChild(ExecLink link) {
+        children.remove(link);
+    }
 }
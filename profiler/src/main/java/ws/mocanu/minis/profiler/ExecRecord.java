@@ -16,12 +16,17 @@ limitations under the License.
 
 package ws.mocanu.minis.profiler;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A record of a how many times and for how long a particular code point was executed.
  */
-public class ExecRecord {
+public class ExecRecord implements RunRecord {
 
     /**
      * The number of times a code point was executed.
@@ -33,15 +38,101 @@ public class ExecRecord {
      */
     private final LongAdder totalRunTime = new LongAdder();
 
+    /**
+     * The distribution of the durations of each execution of a code point.
+     */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * The number, the total duration and the distribution of the durations of the failed executions. The
+     * successful executions are the difference between all the executions and the failed ones. The histogram
+     * is created on the first failure, since most code points never fail.
+     */
+    private final LongAdder nrOfFailures = new LongAdder();
+    private final LongAdder failureRunTime = new LongAdder();
+    private volatile LatencyHistogram failureHistogram;
+
+    /**
+     * The number of executions per custom status and per exception type, up to {@link #MAX_OUTCOME_KEYS}
+     * distinct keys each; the rest are counted under {@link #OTHER_OUTCOME_KEY}.
+     */
+    private final Map<String, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> exceptionCounts = new ConcurrentHashMap<>();
+
+    /**
+     * The records of the executions of a code point per tag set (see {@link TagSet}), next to this record
+     * which holds all of them. Tag sets are interned, so they are looked up by identity. The records are
+     * added by the profiler, which bounds their number.
+     */
+    private final Map<TagSet, TaggedRecord> taggedRecords = new ConcurrentHashMap<>();
+
+    /**
+     * The resources used by the executions of a code point, when the resource accounting is enabled: the
+     * number of measured executions, their wall time, their CPU time (both in nanoseconds) and the bytes
+     * they allocated. Unsupported measurements stay at 0.
+     */
+    private final LongAdder nrOfMeasuredRuns = new LongAdder();
+    private final LongAdder measuredRunTime = new LongAdder();
+    private final LongAdder totalCpuTime = new LongAdder();
+    private final LongAdder totalAllocatedBytes = new LongAdder();
+
+    /**
+     * The number of executions that overlapped a GC pause, and the time they spent in GC pauses (in
+     * nanoseconds), when the GC pause correlation is enabled.
+     */
+    private final LongAdder nrOfGcPausedRuns = new LongAdder();
+    private final LongAdder gcPauseTime = new LongAdder();
+
+    /**
+     * The concurrent executions of a code point, when the concurrency tracking is enabled.
+     */
+    private final ConcurrencyGauge concurrency = new ConcurrencyGauge();
+
+    /**
+     * The time by latency matrix of the executions of a code point, or null when it is not enabled for it.
+     */
+    private volatile LatencyHeatmap heatmap;
+
     private final long[] lastExecutions = new long[10];
 
+    /**
+     * The slowest executions of a code point, when the capture of slow executions is enabled.
+     */
+    private final SlowExecutions slowExecutions = new SlowExecutions();
+
     private int lastExecutionCursor = 0;
 
+    /**
+     * The number of executions that started but did not end yet, always tracked (unlike the
+     * {@link #concurrency}), so that the idle points eviction never evicts a running point.
+     */
+    private final LongAdder nrOfRunningExecutions = new LongAdder();
+
+    /**
+     * The number of runs seen by the last idle check, and the timestamp (nanoseconds) when this number was
+     * seen changing. Only touched by the idle points eviction, never by the recording of executions.
+     */
+    private long runsAtLastIdleCheck = 0;
+    private long lastActivityTimestamp = System.nanoTime();
+
     // ----------------------------------------------------------------------------------------------------
 
+    /**
+     * Marks the start of an execution, which keeps this record from being idle until the matching
+     * {@link #markEnded()}.
+     */
+    public void markStarted() {
+        nrOfRunningExecutions.increment();
+    }
+
+    public void markEnded() {
+        nrOfRunningExecutions.decrement();
+    }
+
     public void recordExecution(long executionTime) {
         nrOfRuns.increment();
         totalRunTime.add(executionTime);
+        histogram.record(executionTime);
 
         synchronized (lastExecutions) {
             lastExecutionCursor++;
@@ -52,9 +143,137 @@ public class ExecRecord {
         }
     }
 
+    /**
+     * Records the outcome of an execution that was already recorded by {@link #recordExecution(long)}.
+     *
+     * @param executionTime the duration of the execution, in nanoseconds
+     * @param failed        whether the execution failed
+     * @param status        the custom status of the execution, or null
+     * @param exceptionType the class name of the exception that made the execution fail, or null
+     */
+    public void recordOutcome(long executionTime, boolean failed, String status, String exceptionType) {
+        if (failed) {
+            nrOfFailures.increment();
+            failureRunTime.add(executionTime);
+            getOrCreateFailureHistogram().record(executionTime);
+        }
+        if (status != null) {
+            incrementOutcomeCount(statusCounts, status);
+        }
+        if (exceptionType != null) {
+            incrementOutcomeCount(exceptionCounts, exceptionType);
+        }
+    }
+
+    /**
+     * Records the resources used by a single execution, measured on the thread that ran it.
+     *
+     * @param executionTime the wall time of the execution, in nanoseconds
+     * @param cpuTime       the CPU time of the execution, in nanoseconds, or {@link ResourceMeter#UNSUPPORTED}
+     * @param allocatedBytes the bytes allocated by the execution, or {@link ResourceMeter#UNSUPPORTED}
+     */
+    public void recordResources(long executionTime, long cpuTime, long allocatedBytes) {
+        nrOfMeasuredRuns.increment();
+        measuredRunTime.add(executionTime);
+        if (cpuTime != ResourceMeter.UNSUPPORTED) {
+            totalCpuTime.add(cpuTime);
+        }
+        if (allocatedBytes != ResourceMeter.UNSUPPORTED) {
+            totalAllocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    /**
+     * Records the part of an execution that was spent in GC pauses.
+     *
+     * @param pauseTime the time spent in GC pauses, in nanoseconds
+     */
+    public void recordGcPause(long pauseTime) {
+        nrOfGcPausedRuns.increment();
+        gcPauseTime.add(pauseTime);
+    }
+
+    /**
+     * Starts (or restarts, with a different geometry) keeping a latency heatmap for this record.
+     */
+    public void enableHeatmap(int columns, long columnMillis) {
+        LatencyHeatmap currentHeatmap = heatmap;
+        if (currentHeatmap == null || currentHeatmap.getColumns() != columns
+            || currentHeatmap.getColumnMillis() != columnMillis) {
+            heatmap = new LatencyHeatmap(columns, columnMillis);
+        }
+    }
+
+    public void disableHeatmap() {
+        heatmap = null;
+    }
+
+    /**
+     * Adds the given counters (usually coming from another profiler) to this record.
+     *
+     * @param counters the counters to add
+     */
+    public void merge(ExecCounters counters) {
+        nrOfRuns.add(counters.getNrOfRuns());
+        totalRunTime.add(counters.getTotalRunTime());
+        histogram.add(counters.getHistogram(), counters.getMaxRunTime());
+        nrOfFailures.add(counters.getNrOfFailures());
+        failureRunTime.add(counters.getFailureRunTime());
+        if (counters.getNrOfFailures() > 0) {
+            getOrCreateFailureHistogram().add(counters.getFailureHistogram(), counters.getMaxFailureRunTime());
+        }
+        nrOfMeasuredRuns.add(counters.getNrOfMeasuredRuns());
+        measuredRunTime.add(counters.getMeasuredRunTime());
+        totalCpuTime.add(counters.getTotalCpuTime());
+        totalAllocatedBytes.add(counters.getTotalAllocatedBytes());
+    }
+
     public void reset() {
         nrOfRuns.reset();
         totalRunTime.reset();
+        histogram.reset();
+        nrOfFailures.reset();
+        failureRunTime.reset();
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram != null) {
+            currentFailureHistogram.reset();
+        }
+        statusCounts.clear();
+        exceptionCounts.clear();
+        nrOfMeasuredRuns.reset();
+        measuredRunTime.reset();
+        totalCpuTime.reset();
+        totalAllocatedBytes.reset();
+        nrOfGcPausedRuns.reset();
+        gcPauseTime.reset();
+        slowExecutions.reset();
+        concurrency.reset();
+        LatencyHeatmap currentHeatmap = heatmap;
+        if (currentHeatmap != null) {
+            currentHeatmap.reset();
+        }
+        for (TaggedRecord taggedRecord : taggedRecords.values()) {
+            taggedRecord.reset();
+        }
+    }
+
+    /**
+     * Checks whether this record had no new executions for the given amount of time and has no executions
+     * running. The activity is detected by comparing the number of runs between consecutive checks, so this
+     * method is meant to be called periodically, from a single thread at a time.
+     *
+     * @param currentTimestamp the current timestamp, in nanoseconds
+     * @param idleNanos        the time without executions after which the record is considered idle
+     * @return true if the record was idle for at least the given time
+     */
+    public boolean isIdle(long currentTimestamp, long idleNanos) {
+        long runs = nrOfRuns.longValue();
+        if (runs != runsAtLastIdleCheck || nrOfRunningExecutions.sum() > 0) {
+            runsAtLastIdleCheck = runs;
+            lastActivityTimestamp = currentTimestamp;
+            return false;
+        }
+        return currentTimestamp - lastActivityTimestamp >= idleNanos;
     }
 
     // ----------------------------------------------------------------------------------------------------
@@ -67,6 +286,139 @@ public class ExecRecord {
         return totalRunTime.longValue();
     }
 
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getNrOfFailures() {
+        return nrOfFailures.longValue();
+    }
+
+    public long getFailureRunTime() {
+        return failureRunTime.longValue();
+    }
+
+    /**
+     * @return the distribution of the durations of the failed executions, or null if none failed yet
+     */
+    public LatencyHistogram getFailureHistogram() {
+        return failureHistogram;
+    }
+
+    /**
+     * @return a copy of the bucket counts of the failed executions, all zero if none failed yet
+     */
+    public long[] getFailureHistogramCounts() {
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        return currentFailureHistogram != null ? currentFailureHistogram.getCounts() : new long[LatencyHistogram.BUCKET_COUNT];
+    }
+
+    public long getMaxFailureRunTime() {
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        return currentFailureHistogram != null ? currentFailureHistogram.getMaxValue() : 0;
+    }
+
+    /**
+     * @return the distribution of the durations of the successful executions, computed bucket by bucket as the
+     *     difference between all the executions and the failed ones
+     */
+    public long[] getSuccessHistogramCounts() {
+        long[] counts = histogram.getCounts();
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram != null) {
+            long[] failureCounts = currentFailureHistogram.getCounts();
+            for (int index = 0; index < counts.length; index++) {
+                counts[index] = Math.max(0, counts[index] - failureCounts[index]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the record of the executions with the given tag set, or null if there is none yet
+     */
+    TaggedRecord getTaggedRecord(TagSet tags) {
+        return taggedRecords.get(tags);
+    }
+
+    /**
+     * Adds the given record for the given tag set, unless another thread added one in the meantime.
+     *
+     * @return the record that was already there, or null if the given one was added
+     */
+    TaggedRecord addTaggedRecord(TagSet tags, TaggedRecord taggedRecord) {
+        return taggedRecords.putIfAbsent(tags, taggedRecord);
+    }
+
+    int getNrOfTaggedRecords() {
+        return taggedRecords.size();
+    }
+
+    /**
+     * @return the records of the executions per tag set, sorted by the canonical form of the tag sets
+     */
+    Map<TagSet, TaggedRecord> getTaggedRecords() {
+        if (taggedRecords.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<TagSet, TaggedRecord> copy = new TreeMap<>(Comparator.comparing(TagSet::toString));
+        copy.putAll(taggedRecords);
+        return copy;
+    }
+
+    /**
+     * @return the number of executions per custom status, sorted by status
+     */
+    public Map<String, Long> getStatusCounts() {
+        return copyOutcomeCounts(statusCounts);
+    }
+
+    /**
+     * @return the number of failed executions per exception type, sorted by type
+     */
+    public Map<String, Long> getExceptionCounts() {
+        return copyOutcomeCounts(exceptionCounts);
+    }
+
+    public long getNrOfMeasuredRuns() {
+        return nrOfMeasuredRuns.longValue();
+    }
+
+    public long getMeasuredRunTime() {
+        return measuredRunTime.longValue();
+    }
+
+    public long getTotalCpuTime() {
+        return totalCpuTime.longValue();
+    }
+
+    public long getTotalAllocatedBytes() {
+        return totalAllocatedBytes.longValue();
+    }
+
+    public long getNrOfGcPausedRuns() {
+        return nrOfGcPausedRuns.longValue();
+    }
+
+    public long getGcPauseTime() {
+        return gcPauseTime.longValue();
+    }
+
+    public ConcurrencyGauge getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the latency heatmap of this record, or null if it is not enabled
+     */
+    public LatencyHeatmap getHeatmap() {
+        return heatmap;
+    }
+
+    public SlowExecutions getSlowExecutions() {
+        return slowExecutions;
+    }
+
     public long getSumForLastNExecutions() {
         long sum = 0;
         for (int index = 0; index < lastExecutions.length; index++) {
@@ -75,4 +427,49 @@ public class ExecRecord {
         return sum;
     }
 
+    // ----------------------------------------------------------------------------------------------------
+
+    private LatencyHistogram getOrCreateFailureHistogram() {
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram == null) {
+            synchronized (this) {
+                currentFailureHistogram = failureHistogram;
+                if (currentFailureHistogram == null) {
+                    currentFailureHistogram = new LatencyHistogram();
+                    failureHistogram = currentFailureHistogram;
+                }
+            }
+        }
+        return currentFailureHistogram;
+    }
+
+    private static void incrementOutcomeCount(Map<String, LongAdder> counts, String key) {
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= MAX_OUTCOME_KEYS) {
+                key = OTHER_OUTCOME_KEY;
+            }
+            count = counts.computeIfAbsent(key, newKey -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private static Map<String, Long> copyOutcomeCounts(Map<String, LongAdder> counts) {
+        if (counts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> copy = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().longValue());
+        }
+        return copy;
+    }
+
+    /**
+     * The maximum number of distinct statuses (and, separately, exception types) counted per code point, so
+     * that statuses built from unbounded values don't make the record grow forever.
+     */
+    static final int MAX_OUTCOME_KEYS = 32;
+    static final String OTHER_OUTCOME_KEY = "OTHER";
+
 }
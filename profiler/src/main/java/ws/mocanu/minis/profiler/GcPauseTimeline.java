@@ -0,0 +1,175 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * A timeline of the last stop-the-world GC pauses, fed by the notifications of the JVM's
+ * {@link GarbageCollectorMXBean}s (using their {@code com.sun.management} extension). The pauses are kept on
+ * the {@link System#nanoTime()} scale, so they can be matched against the executions of the code points.
+ * <p>
+ * The notifications are delivered asynchronously, shortly after each pause, so an execution that ends right
+ * after a pause may not see it yet. The timestamps of the pauses have a millisecond resolution, and the first
+ * pauses may be placed slightly late, until the origin of the GC clock is calibrated.
+ */
+public class GcPauseTimeline implements NotificationListener {
+
+    /**
+     * The number of pauses kept in the timeline; the older ones are overwritten.
+     */
+    static final int CAPACITY = 1024;
+
+    private final long[] pauseStarts = new long[CAPACITY];
+    private final long[] pauseEnds = new long[CAPACITY];
+    private final String[] pauseDescriptions = new String[CAPACITY];
+    private long nrOfPauses = 0;
+
+    /**
+     * The end of the last known pause, read without locking by every execution that checks for overlaps.
+     */
+    private volatile long lastPauseEnd = Long.MIN_VALUE;
+
+    /**
+     * The {@link System#nanoTime()} value corresponding to the origin of the GC timestamps. The origin is not
+     * exactly the one of {@link java.lang.management.RuntimeMXBean#getUptime()}, so it is estimated from the
+     * arrival of the notifications instead: a notification never arrives before its pause ended, hence the
+     * smallest difference seen so far between the arrival and the end of a pause is the best estimate.
+     */
+    private long gcClockOriginNanos = Long.MAX_VALUE;
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public void start() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // already removed, nothing to do
+            }
+        }
+        emitters.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        if (isConcurrentCycle(info)) {
+            return;
+        }
+        GcInfo gcInfo = info.getGcInfo();
+        addPause(System.nanoTime(), gcInfo.getStartTime(), gcInfo.getEndTime(), info.getGcName() + " (" + info.getGcCause() + ")");
+    }
+
+    /**
+     * Computes how much of the given time interval was spent in GC pauses.
+     *
+     * @param start the start of the interval, as given by {@link System#nanoTime()}
+     * @param end   the end of the interval, as given by {@link System#nanoTime()}
+     * @return the overlap between the interval and the known GC pauses, in nanoseconds
+     */
+    public long getPauseTimeBetween(long start, long end) {
+        if (lastPauseEnd <= start) {
+            return 0;
+        }
+        long pauseTime = 0;
+        synchronized (this) {
+            for (long index = nrOfPauses - 1; index >= 0 && index >= nrOfPauses - CAPACITY; index--) {
+                int slot = (int) (index % CAPACITY);
+                if (pauseEnds[slot] <= start) {
+                    break; // the pauses are added in order, so all the older ones ended before the interval too
+                }
+                pauseTime += Math.max(0, Math.min(end, pauseEnds[slot]) - Math.max(start, pauseStarts[slot]));
+            }
+        }
+        return pauseTime;
+    }
+
+    /**
+     * Prints the last pauses of the timeline, newest first.
+     *
+     * @param maxPauses the maximum number of pauses to print
+     */
+    public void printPauses(int maxPauses, ReportPrinter printer) {
+        long currentTimestamp = System.nanoTime();
+        synchronized (this) {
+            printer.printReportLine("Profiler| GC pauses | total: %d | shown: last %d", nrOfPauses, Math.min(maxPauses, Math.min(nrOfPauses, CAPACITY)));
+            for (long index = nrOfPauses - 1; index >= 0 && index >= nrOfPauses - Math.min(maxPauses, CAPACITY); index--) {
+                int slot = (int) (index % CAPACITY);
+                printer.printReportLine("Profiler|     %8d ms | %8d ms ago | %s",
+                                        (pauseEnds[slot] - pauseStarts[slot]) / 1000000, // nanos to millis
+                                        (currentTimestamp - pauseEnds[slot]) / 1000000, pauseDescriptions[slot]);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param arrivalTimestamp the time when the notification arrived, as given by {@link System#nanoTime()}
+     * @param startMillis      the start of the pause, in milliseconds on the GC clock
+     * @param endMillis        the end of the pause, in milliseconds on the GC clock
+     */
+    private synchronized void addPause(long arrivalTimestamp, long startMillis, long endMillis, String description) {
+        gcClockOriginNanos = Math.min(gcClockOriginNanos, arrivalTimestamp - TimeUnit.MILLISECONDS.toNanos(endMillis));
+        long pauseStart = gcClockOriginNanos + TimeUnit.MILLISECONDS.toNanos(startMillis);
+        long pauseEnd = gcClockOriginNanos + TimeUnit.MILLISECONDS.toNanos(endMillis);
+        int slot = (int) (nrOfPauses % CAPACITY);
+        pauseStarts[slot] = pauseStart;
+        pauseEnds[slot] = pauseEnd;
+        pauseDescriptions[slot] = description;
+        nrOfPauses++;
+        lastPauseEnd = Math.max(lastPauseEnd, pauseEnd);
+    }
+
+    /**
+     * The concurrent collectors (the G1 concurrent cycle, ZGC and Shenandoah cycles) also send notifications,
+     * but their durations are mostly spent running next to the application threads, not pausing them.
+     */
+    private static boolean isConcurrentCycle(GarbageCollectionNotificationInfo info) {
+        String name = info.getGcName();
+        return name.contains("Concurrent") || name.contains("Cycles") || info.getGcAction().contains("concurrent");
+    }
+
+}
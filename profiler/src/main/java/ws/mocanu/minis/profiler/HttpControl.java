@@ -21,10 +21,18 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Provides a very simple view and control interface over HTTP for a particular profiler.
@@ -37,8 +45,10 @@ import java.util.StringTokenizer;
 public class HttpControl extends Thread {
 
     private Profiler controlledProfiler;
-    private boolean keepRunning = true;
+    private DeltaStreamer deltaStreamer;
+    private volatile boolean keepRunning = true;
     private int listeningPort;
+    private ServerSocket serverConnect;
 
     public void init(int listeningPort, Profiler controlledProfiler) {
         this.setDaemon(true);
@@ -57,40 +67,85 @@ public class HttpControl extends Thread {
 
     public void prepareToStop() {
         keepRunning = false;
+        try {
+            // unblocks the accept() below, which does not react to interruption
+            if (serverConnect != null) {
+                serverConnect.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Profiler HTTP control error: " + e.getMessage());
+        }
     }
 
     @Override
     public void run() {
         try {
-            ServerSocket serverConnect = new ServerSocket(listeningPort);
+            serverConnect = new ServerSocket(listeningPort);
             // we listen until user halts server execution
             while (keepRunning) {
                 Socket clientSocket = serverConnect.accept();
                 handleClientConnection(clientSocket);
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Profiler HTTP control error: " + e.getMessage());
+            if (keepRunning) {
+                e.printStackTrace();
+                System.err.println("Profiler HTTP control error: " + e.getMessage());
+            }
         }
     }
 
     // ----------------------------------------------------------------------------------------------------
 
     private static final String STATUS_NOT_FOUND = "404 File Not Found";
+    private static final String STATUS_BAD_REQUEST = "400 Bad Request";
     private static final String STATUS_OK = "200 OK";
     private static final String STATUS_REDIRECT = "302 Found";
     private static final String CT_TEXT_HTML = "text/html";
     private static final String CT_TEXT_PLAIN = "text/plain";
+    private static final String CT_APPLICATION_JSON = "application/json";
     private static final String BODY_REPORT_WITH_BUTTONS =
         "<html><body style='background-color: #AAA;'>"
         + "<textarea style='width: 100%; height: 600px; margin-bottom: 5px;'>{report}</textarea>"
         + "<form action='/reset' method='POST'><input type='submit' value='Reset profiler' style='border: solid 3px #FF9; background-color: #FF9; color: #000;'/></form>"
+        + "<a href='/live'>Live view</a>"
+        + "</body></html>";
+    private static final String BODY_LIVE_VIEW =
+        "<html><body style='background-color: #AAA; font-family: monospace;'>"
+        + "<div id='status'>Connecting...</div>"
+        + "<table id='points' style='border-collapse: collapse; background-color: #EEE;'>"
+        + "<tr><th align='left'>Point</th><th>Runs/s</th><th>Avg (ms)</th><th>p99 (ms)</th><th>Total runs</th></tr></table>"
+        + "<script>"
+        + "var rows = {};"
+        + "var source = new EventSource('/stream');"
+        + "source.onopen = function() { document.getElementById('status').textContent = 'Live'; };"
+        + "source.onerror = function() { document.getElementById('status').textContent = 'Disconnected, retrying...'; };"
+        + "source.onmessage = function(event) {"
+        + "  var delta = JSON.parse(event.data);"
+        + "  for (var key in rows) { rows[key].cells[1].textContent = '0'; }"
+        + "  delta.points.forEach(function(p) {"
+        + "    var row = rows[p.point];"
+        + "    if (!row) {"
+        + "      row = document.getElementById('points').insertRow(-1);"
+        + "      for (var i = 0; i < 5; i++) { row.insertCell(-1).style.padding = '0 10px'; }"
+        + "      row.cells[0].style.paddingLeft = (p.depth * 16) + 'px';"
+        + "      row.cells[0].textContent = p.point;"
+        + "      rows[p.point] = row;"
+        + "    }"
+        + "    row.cells[1].textContent = p.runs;"
+        + "    row.cells[2].textContent = p.avgMs;"
+        + "    row.cells[3].textContent = p.p99Ms;"
+        + "    row.cells[4].textContent = p.totalRuns;"
+        + "  });"
+        + "  document.getElementById('status').textContent = 'Live, updated at ' + new Date(delta.timestamp).toLocaleTimeString();"
+        + "};"
+        + "</script>"
         + "</body></html>";
 
     private void handleClientConnection(Socket socket) {
         // we manage our particular client connection
         BufferedReader in = null;
         PrintWriter out = null;
+        boolean keepConnection = false;
 
         try {
             in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -104,8 +159,11 @@ public class HttpControl extends Thread {
             // we parse the request with a string tokenizer
             StringTokenizer parse = new StringTokenizer(input);
             String method = parse.nextToken().toUpperCase(); // we get the HTTP method of the client
-            // we get file requested
-            String path = parse.nextToken().toLowerCase();
+            // we get file requested, and the query parameters (if any)
+            String target = parse.nextToken();
+            int queryStart = target.indexOf('?');
+            String path = (queryStart < 0 ? target : target.substring(0, queryStart)).toLowerCase();
+            Map<String, String> params = parseQueryParams(queryStart < 0 ? "" : target.substring(queryStart + 1));
             if ("GET".equals(method) || "POST".equals(method)) {
                 switch (path) {
                     case "/": {
@@ -121,6 +179,46 @@ public class HttpControl extends Thread {
                         handleReportCommand(out);
                         break;
                     }
+                    case "/live": {
+                        streamResponse(STATUS_OK, CT_TEXT_HTML, BODY_LIVE_VIEW, null, out);
+                        break;
+                    }
+                    case "/stream": {
+                        keepConnection = handleStreamCommand(socket, out);
+                        break;
+                    }
+                    case "/query": {
+                        handleQueryCommand(params, controlledProfiler::snapshot, out);
+                        break;
+                    }
+                    case "/rollups": {
+                        handleQueryCommand(params, controlledProfiler::snapshotRollups, out);
+                        break;
+                    }
+                    case "/tags": {
+                        handleTagsCommand(params, out);
+                        break;
+                    }
+                    case "/concurrency": {
+                        streamResponse(STATUS_OK, CT_TEXT_PLAIN, printToString(controlledProfiler::printConcurrencyBreakdown), null, out);
+                        break;
+                    }
+                    case "/outcomes": {
+                        streamResponse(STATUS_OK, CT_TEXT_PLAIN, printToString(controlledProfiler::printOutcomeBreakdown), null, out);
+                        break;
+                    }
+                    case "/gc": {
+                        streamResponse(STATUS_OK, CT_TEXT_PLAIN, printToString(controlledProfiler::printGcPauseBreakdown), null, out);
+                        break;
+                    }
+                    case "/heatmap": {
+                        handleHeatmapCommand(params.get("point"), out);
+                        break;
+                    }
+                    case "/slow": {
+                        handleSlowExecutionsCommand(params.get("point"), out);
+                        break;
+                    }
                     default: {
                         handleUnknownCommand(out);
                     }
@@ -132,13 +230,16 @@ public class HttpControl extends Thread {
             e.printStackTrace();
             System.err.println("Profiler HTTP control error: " + e.getMessage());
         } finally {
-            try {
-                in.close();
-                out.close();
-                socket.close(); // we close socket connection
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.err.println("Profiler HTTP control error: " + e.getMessage());
+            // a connection handed over to the delta streamer stays open
+            if (!keepConnection) {
+                try {
+                    in.close();
+                    out.close();
+                    socket.close(); // we close socket connection
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.err.println("Profiler HTTP control error: " + e.getMessage());
+                }
             }
         }
     }
@@ -172,6 +273,153 @@ public class HttpControl extends Thread {
         streamResponse(STATUS_OK, CT_TEXT_PLAIN, reportAsString, null, out);
     }
 
+    /**
+     * Hands the connection over to the {@link DeltaStreamer}, starting a new streamer if none is running.
+     *
+     * @return true if the connection must be kept open
+     */
+    private boolean handleStreamCommand(Socket socket, PrintWriter out) throws IOException {
+        synchronized (this) {
+            if (deltaStreamer == null || !deltaStreamer.subscribe(socket)) {
+                deltaStreamer = new DeltaStreamer(controlledProfiler);
+                if (!deltaStreamer.subscribe(socket)) {
+                    streamResponse(STATUS_NOT_FOUND, null, null, null, out);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a {@link ProfilerQuery} built from the request parameters: top, by (total, self, mean, p99, count),
+     * prefix, regex, depth, subtree and format (text or json), over either the code points or their rollups by
+     * name prefix.
+     */
+    private void handleQueryCommand(Map<String, String> params, Supplier<ProfilerSnapshot> snapshotSupplier, PrintWriter out) {
+        ProfilerQuery query = new ProfilerQuery();
+        try {
+            if (params.containsKey("top")) {
+                query.top(Integer.parseInt(params.get("top")));
+            }
+            if (params.containsKey("by")) {
+                query.orderBy(ProfilerQuery.parseOrder(params.get("by")));
+            }
+            if (params.containsKey("prefix")) {
+                query.withPrefix(params.get("prefix"));
+            }
+            if (params.containsKey("regex")) {
+                query.withRegex(params.get("regex"));
+            }
+            if (params.containsKey("depth")) {
+                query.maxDepth(Integer.parseInt(params.get("depth")));
+            }
+            if (params.containsKey("subtree")) {
+                query.subtree(params.get("subtree"));
+            }
+        } catch (IllegalArgumentException e) { // includes NumberFormatException and PatternSyntaxException
+            streamResponse(STATUS_BAD_REQUEST, CT_TEXT_PLAIN, "Invalid query: " + e.getMessage(), null, out);
+            return;
+        }
+
+        ProfilerSnapshot snapshot = snapshotSupplier.get();
+        List<PointStats> result = query.run(snapshot);
+        if ("json".equalsIgnoreCase(params.get("format"))) {
+            streamResponse(STATUS_OK, CT_APPLICATION_JSON, ProfilerQuery.toJson(result, snapshot), null, out);
+        } else {
+            streamResponse(STATUS_OK, CT_TEXT_PLAIN, printToString(printer -> ProfilerQuery.printResult(result, snapshot, printer)), null, out);
+        }
+    }
+
+    /**
+     * Queries the statistics of a point per tag set, or per value of the tag given as the tag parameter.
+     */
+    private void handleTagsCommand(Map<String, String> params, PrintWriter out) {
+        String point = params.get("point");
+        if (point == null) {
+            streamResponse(STATUS_BAD_REQUEST, CT_TEXT_PLAIN, "Missing the point parameter", null, out);
+            return;
+        }
+        handleQueryCommand(params, () -> controlledProfiler.snapshotTags(point, params.get("tag")), out);
+    }
+
+    /**
+     * Renders the latency heatmap of the given point as an SVG image (time on the horizontal axis, slowest
+     * latencies on top, darker cells for more executions), or the list of the points that keep a heatmap.
+     */
+    private void handleHeatmapCommand(String point, PrintWriter out) {
+        StringBuilder body = new StringBuilder("<html><head>");
+        if (point == null) {
+            body.append("</head><body style='background-color: #AAA; font-family: monospace;'><h3>Latency heatmaps</h3>");
+            for (String heatmapPoint : controlledProfiler.getLatencyHeatmapPoints()) {
+                body.append("<a href='/heatmap?point=").append(urlEncode(heatmapPoint)).append("'>")
+                    .append(escapeHtml(heatmapPoint)).append("</a><br/>");
+            }
+            streamResponse(STATUS_OK, CT_TEXT_HTML, body.append("</body></html>").toString(), null, out);
+            return;
+        }
+        LatencyHeatmap heatmap = controlledProfiler.getLatencyHeatmap(point);
+        if (heatmap == null) {
+            streamResponse(STATUS_NOT_FOUND, CT_TEXT_PLAIN, "No latency heatmap for point: " + point, null, out);
+            return;
+        }
+
+        long[][] counts = heatmap.getCounts();
+        long maxCount = 1;
+        for (long[] column : counts) {
+            for (long count : column) {
+                maxCount = Math.max(maxCount, count);
+            }
+        }
+        int cellWidth = Math.max(2, 1200 / counts.length);
+        int cellHeight = 16;
+        int labelWidth = 70;
+        int width = labelWidth + counts.length * cellWidth;
+        int height = LatencyHeatmap.ROWS * cellHeight + 20;
+
+        body.append("<meta http-equiv='refresh' content='").append(Math.max(1, heatmap.getColumnMillis() / 1000)).append("'/>")
+            .append("</head><body style='background-color: #AAA; font-family: monospace;'>")
+            .append("<h3>").append(escapeHtml(point)).append(" (").append(counts.length).append(" x ")
+            .append(heatmap.getColumnMillis()).append(" ms, max ").append(maxCount).append(" runs per cell, until ")
+            .append(new Date(heatmap.getCurrentColumnStartMillis() + heatmap.getColumnMillis())).append(")</h3>")
+            .append("<svg xmlns='http://www.w3.org/2000/svg' width='").append(width).append("' height='").append(height)
+            .append("' style='background-color: #FFF; font-size: 10px;'>");
+        for (int row = 0; row < LatencyHeatmap.ROWS; row++) {
+            int y = (LatencyHeatmap.ROWS - 1 - row) * cellHeight;
+            body.append("<text x='2' y='").append(y + cellHeight - 4).append("'>&gt;= ")
+                .append(formatNanos(LatencyHeatmap.rowLowerBound(row))).append("</text>");
+            for (int column = 0; column < counts.length; column++) {
+                long count = counts[column][row];
+                if (count == 0) {
+                    continue;
+                }
+                double intensity = Math.log1p(count) / Math.log1p(maxCount);
+                body.append("<rect x='").append(labelWidth + column * cellWidth).append("' y='").append(y)
+                    .append("' width='").append(cellWidth).append("' height='").append(cellHeight)
+                    .append("' fill='hsl(").append(Math.round(60 - 60 * intensity)).append(",100%,")
+                    .append(Math.round(85 - 50 * intensity)).append("%)'><title>").append(count).append(" runs, ")
+                    .append((counts.length - 1 - column) * heatmap.getColumnMillis() / 1000).append(" s ago</title></rect>");
+            }
+        }
+        int labelEvery = Math.max(1, counts.length / 10);
+        for (int column = 0; column < counts.length; column += labelEvery) {
+            body.append("<text x='").append(labelWidth + column * cellWidth).append("' y='").append(height - 4).append("'>-")
+                .append((counts.length - 1 - column) * heatmap.getColumnMillis() / 1000).append("s</text>");
+        }
+        body.append("</svg><br/><a href='/heatmap'>All heatmaps</a></body></html>");
+        streamResponse(STATUS_OK, CT_TEXT_HTML, body.toString(), null, out);
+    }
+
+    private void handleSlowExecutionsCommand(String point, PrintWriter out) {
+        String slowExecutionsAsString;
+        if (point != null) {
+            slowExecutionsAsString = printToString(printer -> controlledProfiler.printSlowExecutions(point, printer));
+        } else {
+            slowExecutionsAsString = printToString(controlledProfiler::printSlowExecutions);
+        }
+        streamResponse(STATUS_OK, CT_TEXT_PLAIN, slowExecutionsAsString, null, out);
+    }
+
     private void handleResetCommand(PrintWriter out) {
         controlledProfiler.reset();
         streamResponse(STATUS_REDIRECT, null, null, "/", out);
@@ -182,8 +430,33 @@ public class HttpControl extends Thread {
     }
 
     private String getProfilerReportAsString() {
+        return printToString(controlledProfiler::printReport);
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1000000000L) {
+            return nanos / 1000000000L + " s";
+        } else if (nanos >= 1000000L) {
+            return nanos / 1000000L + " ms";
+        }
+        return nanos / 1000L + " us";
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;");
+    }
+
+    private static String urlEncode(String text) {
+        try {
+            return URLEncoder.encode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+    }
+
+    private String printToString(Consumer<ReportPrinter> printing) {
         try (final StringWriter stringWriter = new StringWriter()) {
-            controlledProfiler.printReport((format, args) -> stringWriter.write(String.format(format, args) + "\n"));
+            printing.accept((format, args) -> stringWriter.write(String.format(format, args) + "\n"));
             return stringWriter.toString();
         } catch (IOException e) {
             System.err.println("Profiler HTTP control error: " + e.getMessage());
@@ -191,4 +464,18 @@ public class HttpControl extends Thread {
         }
     }
 
+    private Map<String, String> parseQueryParams(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int separator = param.indexOf('=');
+            String name = separator < 0 ? param : param.substring(0, separator);
+            String value = separator < 0 ? "" : param.substring(separator + 1);
+            params.put(URLDecoder.decode(name, "UTF-8").toLowerCase(), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
 }
\ No newline at end of file
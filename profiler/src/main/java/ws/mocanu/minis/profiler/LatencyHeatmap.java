@@ -0,0 +1,151 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A time by latency matrix of the executions of a code point: each column covers a fixed interval of time
+ * (e.g. one second) and each row a power of two range of durations. The columns are kept in a fixed-size
+ * ring, so only the last {@code columns} intervals are available, and the memory used doesn't grow over time.
+ * <p>
+ * A column is cleared by the first execution that lands in it after the ring wrapped around. Executions
+ * recorded by other threads while the column is being cleared may be lost, which is acceptable for a
+ * visualization.
+ */
+public class LatencyHeatmap {
+
+    /**
+     * The number of latency rows. Row 0 holds the executions shorter than 2 microseconds, row N the
+     * executions between 2^N and 2^(N+1) microseconds, and the last row everything longer.
+     */
+    public static final int ROWS = 24;
+
+    private final int columns;
+    private final long columnNanos;
+    private final long baseNanos;
+    private final long baseMillis;
+    private final AtomicLongArray counts;
+
+    /**
+     * The interval (as number of columns since {@link #baseNanos}) currently held by each column of the ring.
+     */
+    private final AtomicLongArray columnIntervals;
+
+    public LatencyHeatmap(int columns, long columnMillis) {
+        if (columns <= 0 || columnMillis <= 0) {
+            throw new IllegalArgumentException("The heatmap columns and the column duration must be positive: "
+                                               + columns + ", " + columnMillis);
+        }
+        this.columns = columns;
+        this.columnNanos = TimeUnit.MILLISECONDS.toNanos(columnMillis);
+        this.baseNanos = System.nanoTime();
+        this.baseMillis = System.currentTimeMillis();
+        this.counts = new AtomicLongArray(columns * ROWS);
+        this.columnIntervals = new AtomicLongArray(columns);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param endTimestamp  the time when the execution ended, as given by {@link System#nanoTime()}
+     * @param executionTime the duration of the execution, in nanoseconds
+     */
+    public void record(long endTimestamp, long executionTime) {
+        long interval = Math.max(0, endTimestamp - baseNanos) / columnNanos;
+        int column = (int) (interval % columns);
+        long columnInterval = columnIntervals.get(column);
+        if (columnInterval != interval) {
+            if (columnInterval > interval) {
+                return; // a late execution, for a column that was already reused
+            }
+            if (columnIntervals.compareAndSet(column, columnInterval, interval)) {
+                for (int row = 0; row < ROWS; row++) {
+                    counts.set(column * ROWS + row, 0);
+                }
+            }
+        }
+        counts.incrementAndGet(column * ROWS + rowOf(executionTime));
+    }
+
+    public void reset() {
+        for (int index = 0; index < counts.length(); index++) {
+            counts.set(index, 0);
+        }
+    }
+
+    /**
+     * Copies the matrix, oldest column first. Columns without executions (or older than the ring) are
+     * returned as zeros.
+     *
+     * @return the counts indexed by [column][row]; the last column is the current, still filling, interval
+     */
+    public long[][] getCounts() {
+        long currentInterval = Math.max(0, System.nanoTime() - baseNanos) / columnNanos;
+        long[][] matrix = new long[columns][ROWS];
+        for (int index = 0; index < columns; index++) {
+            long interval = currentInterval - columns + 1 + index;
+            if (interval < 0) {
+                continue;
+            }
+            int column = (int) (interval % columns);
+            if (columnIntervals.get(column) != interval) {
+                continue;
+            }
+            for (int row = 0; row < ROWS; row++) {
+                matrix[index][row] = counts.get(column * ROWS + row);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @return the wall clock time (milliseconds since the epoch) when the last column of
+     *     {@link #getCounts()} started
+     */
+    public long getCurrentColumnStartMillis() {
+        long currentInterval = Math.max(0, System.nanoTime() - baseNanos) / columnNanos;
+        return baseMillis + TimeUnit.NANOSECONDS.toMillis(currentInterval * columnNanos);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public long getColumnMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(columnNanos);
+    }
+
+    /**
+     * @return the lower bound of the durations of the given row, in nanoseconds
+     */
+    public static long rowLowerBound(int row) {
+        return row == 0 ? 0 : 1000L << row;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static int rowOf(long executionTime) {
+        long micros = executionTime / 1000;
+        if (micros < 2) {
+            return 0;
+        }
+        return Math.min(ROWS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+}
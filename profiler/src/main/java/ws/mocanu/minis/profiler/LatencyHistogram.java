@@ -0,0 +1,333 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size, log-linear histogram of durations (in nanoseconds). Each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any recorded value lands in a bucket at most 12.5% wide, whatever
+ * its magnitude. Recording is lock-free; histograms (or their bucket counts) can be added together, which
+ * makes them suitable for merging statistics from several sources.
+ * <p>
+ * The buckets of each power of two are allocated the first time a value of that magnitude is recorded, since
+ * most code points only ever see a few powers of two, so an idle histogram costs a few hundred bytes instead
+ * of the {@link #BUCKET_COUNT} counters. The counts start in a single stripe; when concurrent recordings
+ * collide on it, the histogram spreads the recording threads over more stripes (up to {@link #MAX_STRIPES}),
+ * like a {@link java.util.concurrent.atomic.LongAdder} does, and the stripes are summed up when read.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets needed for covering all the positive long values.
+     */
+    public static final int BUCKET_COUNT = (62 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    /**
+     * The maximum number of stripes of a contended histogram: the number of CPUs, rounded down to a power of
+     * two, but no more than 8.
+     */
+    static final int MAX_STRIPES = Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+
+    private static final int CHUNK_COUNT = BUCKET_COUNT / SUB_BUCKETS;
+
+    private volatile Stripe[] stripes = {new Stripe()};
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public void record(long value) {
+        int index = bucketIndex(value);
+        Stripe[] currentStripes = stripes;
+        Stripe stripe = currentStripes.length == 1 ? currentStripes[0] : currentStripes[stripeIndex(currentStripes.length)];
+        AtomicLongArray chunk = stripe.getChunk(index >>> SUB_BUCKET_BITS);
+        int chunkOffset = index & (SUB_BUCKETS - 1);
+        long count = chunk.get(chunkOffset);
+        if (!chunk.compareAndSet(chunkOffset, count, count + 1)) {
+            chunk.incrementAndGet(chunkOffset);
+            growStripes(currentStripes);
+        }
+        stripe.updateMax(value);
+    }
+
+    /**
+     * Adds the given bucket counts to this histogram, e.g. for merging in the histogram of another source.
+     *
+     * @param bucketCounts the counts to add, indexed as returned by {@link #getCounts()}
+     * @param max          the maximum value recorded by the other source
+     */
+    public void add(long[] bucketCounts, long max) {
+        Stripe stripe = stripes[0];
+        for (int index = 0; index < bucketCounts.length && index < BUCKET_COUNT; index++) {
+            if (bucketCounts[index] != 0) {
+                stripe.getChunk(index >>> SUB_BUCKET_BITS).addAndGet(index & (SUB_BUCKETS - 1), bucketCounts[index]);
+            }
+        }
+        stripe.updateMax(max);
+    }
+
+    /**
+     * Adds the given non-empty buckets to this histogram, like {@link #add(long[], long)}.
+     */
+    void add(SparseHistogram bucketCounts, long max) {
+        Stripe stripe = stripes[0];
+        for (int position = 0; position < bucketCounts.size(); position++) {
+            int index = bucketCounts.getBucket(position);
+            stripe.getChunk(index >>> SUB_BUCKET_BITS).addAndGet(index & (SUB_BUCKETS - 1), bucketCounts.getCount(position));
+        }
+        stripe.updateMax(max);
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            stripe.reset();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @return a copy of the bucket counts of this histogram
+     */
+    public long[] getCounts() {
+        long[] result = new long[BUCKET_COUNT];
+        for (Stripe stripe : stripes) {
+            stripe.addCountsTo(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the non-empty buckets of this histogram, read chunk by chunk without copying all
+     *     the {@link #BUCKET_COUNT} counters
+     */
+    SparseHistogram getSparseCounts() {
+        Stripe[] currentStripes = stripes;
+        int[] buckets = null;
+        long[] counts = null;
+        int size = 0;
+        long[] chunkCounts = new long[SUB_BUCKETS];
+        for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+            boolean allocated = false;
+            for (Stripe stripe : currentStripes) {
+                allocated |= stripe.addChunkCountsTo(chunkIndex, chunkCounts);
+            }
+            if (!allocated) {
+                continue;
+            }
+            for (int offset = 0; offset < SUB_BUCKETS; offset++) {
+                if (chunkCounts[offset] != 0) {
+                    if (buckets == null || size == buckets.length) {
+                        buckets = buckets == null ? new int[SUB_BUCKETS] : Arrays.copyOf(buckets, size * 2);
+                        counts = counts == null ? new long[SUB_BUCKETS] : Arrays.copyOf(counts, size * 2);
+                    }
+                    buckets[size] = chunkIndex * SUB_BUCKETS + offset;
+                    counts[size] = chunkCounts[offset];
+                    size++;
+                }
+                chunkCounts[offset] = 0;
+            }
+        }
+        if (size == 0) {
+            return SparseHistogram.EMPTY;
+        }
+        return new SparseHistogram(Arrays.copyOf(buckets, size), Arrays.copyOf(counts, size));
+    }
+
+    public long getCount(int bucketIndex) {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.getCount(bucketIndex);
+        }
+        return count;
+    }
+
+    public long getMaxValue() {
+        long max = 0;
+        for (Stripe stripe : stripes) {
+            max = Math.max(max, stripe.maxValue.get());
+        }
+        return max;
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        return getValueAtPercentile(getCounts(), percentile);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    public static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    public static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return bucketLowerBound(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public static long getTotalCount(long[] bucketCounts) {
+        long total = 0;
+        for (long count : bucketCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Computes a percentile out of the given bucket counts.
+     *
+     * @param bucketCounts the bucket counts, as returned by {@link #getCounts()}
+     * @param percentile   the percentile to compute, between 0 and 100
+     * @return the middle of the bucket holding the given percentile, or 0 if there are no counts
+     */
+    public static long getValueAtPercentile(long[] bucketCounts, double percentile) {
+        long totalCount = getTotalCount(bucketCounts);
+        if (totalCount == 0) {
+            return 0;
+        }
+        long targetCount = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulatedCount = 0;
+        for (int index = 0; index < bucketCounts.length; index++) {
+            cumulatedCount += bucketCounts[index];
+            if (cumulatedCount >= targetCount) {
+                return (bucketLowerBound(index) + bucketUpperBound(index)) / 2;
+            }
+        }
+        return bucketUpperBound(bucketCounts.length - 1);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Doubles the number of stripes after a collision, unless another thread already did it or the maximum
+     * was reached. The existing stripes are kept, so no count is lost.
+     */
+    private void growStripes(Stripe[] currentStripes) {
+        if (currentStripes.length >= MAX_STRIPES) {
+            return;
+        }
+        synchronized (this) {
+            if (stripes != currentStripes) {
+                return;
+            }
+            Stripe[] newStripes = new Stripe[currentStripes.length * 2];
+            System.arraycopy(currentStripes, 0, newStripes, 0, currentStripes.length);
+            for (int index = currentStripes.length; index < newStripes.length; index++) {
+                newStripes[index] = new Stripe();
+            }
+            stripes = newStripes;
+        }
+    }
+
+    private static int stripeIndex(int nrOfStripes) {
+        long threadId = Thread.currentThread().getId();
+        return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & (nrOfStripes - 1);
+    }
+
+    /**
+     * One set of bucket counts and its maximum value. The counts are allocated in chunks of
+     * {@link #SUB_BUCKETS} buckets (one power of two each), on first use.
+     */
+    private static class Stripe {
+
+        private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+        private final AtomicLong maxValue = new AtomicLong();
+
+        private AtomicLongArray getChunk(int chunkIndex) {
+            AtomicLongArray chunk = chunks.get(chunkIndex);
+            if (chunk == null) {
+                chunks.compareAndSet(chunkIndex, null, new AtomicLongArray(SUB_BUCKETS));
+                chunk = chunks.get(chunkIndex);
+            }
+            return chunk;
+        }
+
+        private long getCount(int bucketIndex) {
+            AtomicLongArray chunk = chunks.get(bucketIndex >>> SUB_BUCKET_BITS);
+            return chunk != null ? chunk.get(bucketIndex & (SUB_BUCKETS - 1)) : 0;
+        }
+
+        private void addCountsTo(long[] counts) {
+            for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+                AtomicLongArray chunk = chunks.get(chunkIndex);
+                if (chunk != null) {
+                    for (int offset = 0; offset < SUB_BUCKETS; offset++) {
+                        counts[chunkIndex * SUB_BUCKETS + offset] += chunk.get(offset);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return false if the given chunk is not allocated in this stripe
+         */
+        private boolean addChunkCountsTo(int chunkIndex, long[] chunkCounts) {
+            AtomicLongArray chunk = chunks.get(chunkIndex);
+            if (chunk == null) {
+                return false;
+            }
+            for (int offset = 0; offset < SUB_BUCKETS; offset++) {
+                chunkCounts[offset] += chunk.get(offset);
+            }
+            return true;
+        }
+
+        private void updateMax(long value) {
+            long currentMax = maxValue.get();
+            while (value > currentMax && !maxValue.compareAndSet(currentMax, value)) {
+                currentMax = maxValue.get();
+            }
+        }
+
+        private void reset() {
+            for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+                AtomicLongArray chunk = chunks.get(chunkIndex);
+                if (chunk != null) {
+                    for (int offset = 0; offset < SUB_BUCKETS; offset++) {
+                        chunk.set(offset, 0);
+                    }
+                }
+            }
+            maxValue.set(0);
+        }
+
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an in-process workload against a piece of (usually instrumented) code, timing each call under a
+ * code point of a {@link Profiler}. Two modes are supported:
+ * <ul>
+ * <li>closed loop: a number of threads call the task one call after the other, either as fast as possible
+ * or each at its share of a target rate;</li>
+ * <li>open loop: the calls are issued at a target rate, independently of how long the previous calls took,
+ * and run on a pool of threads; when the pool is saturated, the calls wait in a queue.</li>
+ * </ul>
+ * Whenever there is a target rate, the calls are timed from their intended start, not from the moment they
+ * actually started running, so the time spent waiting behind slow calls is part of the recorded latency.
+ * This corrects the coordinated omission of load generators that wait for a slow call before issuing the
+ * next one, and hence under-report the latency during stalls. The latency measured from the actual start
+ * (the service time) is available separately in the {@link LoadResult}.
+ * <p>
+ * The calls made during the warmup are not recorded under the driver's code point, nor in the result;
+ * the code points started by the task itself (placed under the driver's code point) are recorded as usual,
+ * though. The threads come from the given {@link ThreadFactory}, so virtual threads can be used on the JVMs
+ * that support them (e.g. with {@code Thread.ofVirtual().factory()}).
+ * <pre>
+ * LoadResult result = new LoadDriver("Load.handleRequest", () -&gt; controller.handleRequest())
+ *     .openLoop(500, 16)
+ *     .warmup(5000)
+ *     .duration(30000)
+ *     .run();
+ * </pre>
+ */
+public class LoadDriver {
+
+    /**
+     * The highest target rate, of one call per nanosecond.
+     */
+    static final long MAX_RATE_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final String point;
+    private final Callable<?> task;
+
+    private Profiler profiler = Profiler.lets;
+    private boolean openLoop = false;
+    private int threads = 1;
+    private double ratePerSecond = 0;
+    private long warmupMillis = 0;
+    private long durationMillis = 10000;
+    private ThreadFactory threadFactory = new DriverThreadFactory();
+
+    public LoadDriver(String point, Callable<?> task) {
+        this.point = point;
+        this.task = task;
+    }
+
+    public LoadDriver(String point, Runnable task) {
+        this(point, Executors.callable(task));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the task on the given number of threads, each thread calling it again as soon as the previous
+     * call ended.
+     */
+    public LoadDriver closedLoop(int threads) {
+        return closedLoop(threads, 0);
+    }
+
+    /**
+     * Runs the task on the given number of threads, each thread calling it again as soon as the previous
+     * call ended, but no sooner than its share of the target rate allows.
+     *
+     * @param ratePerSecond the target rate of all the threads together, or 0 for as fast as possible; at most
+     *                      one call per nanosecond
+     */
+    public LoadDriver closedLoop(int threads, double ratePerSecond) {
+        checkThreadsAndRate(threads, ratePerSecond);
+        this.openLoop = false;
+        this.threads = threads;
+        this.ratePerSecond = ratePerSecond;
+        return this;
+    }
+
+    /**
+     * Issues calls to the task at the given rate, and runs them on a pool of the given number of threads.
+     *
+     * @param ratePerSecond the target rate, positive and at most one call per nanosecond
+     */
+    public LoadDriver openLoop(double ratePerSecond, int threads) {
+        checkThreadsAndRate(threads, ratePerSecond);
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("An open loop needs a positive rate: " + ratePerSecond);
+        }
+        this.openLoop = true;
+        this.threads = threads;
+        this.ratePerSecond = ratePerSecond;
+        return this;
+    }
+
+    public LoadDriver warmup(long warmupMillis) {
+        if (warmupMillis < 0) {
+            throw new IllegalArgumentException("The warmup must not be negative: " + warmupMillis);
+        }
+        this.warmupMillis = warmupMillis;
+        return this;
+    }
+
+    /**
+     * @param durationMillis how long the calls are issued after the warmup
+     */
+    public LoadDriver duration(long durationMillis) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("The duration must be positive: " + durationMillis);
+        }
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    public LoadDriver threadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
+    public LoadDriver profiler(Profiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    /**
+     * Runs the workload and waits for it to end. In open loop, the calls still queued when the duration ends
+     * are run (and recorded) before returning.
+     *
+     * @throws InterruptedException if the calling thread is interrupted; the workers are interrupted as well,
+     *                              and the queued calls are dropped
+     */
+    public LoadResult run() throws InterruptedException {
+        long startTimestamp = System.nanoTime();
+        long measureTimestamp = startTimestamp + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        long endTimestamp = measureTimestamp + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        LoadResult result = new LoadResult(point);
+        if (openLoop) {
+            runOpenLoop(startTimestamp, measureTimestamp, endTimestamp, result);
+        } else {
+            runClosedLoop(startTimestamp, measureTimestamp, endTimestamp, result);
+        }
+        result.markEnded(Math.min(System.nanoTime(), endTimestamp) - measureTimestamp);
+        return result;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void runClosedLoop(long startTimestamp, long measureTimestamp, long endTimestamp, LoadResult result)
+        throws InterruptedException {
+        long intervalPerThread = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / ratePerSecond) : 0;
+        List<Thread> workers = new ArrayList<>();
+        for (int index = 0; index < threads; index++) {
+            long firstIntendedStart = startTimestamp + intervalPerThread * index / threads; // spread the threads
+            Thread worker = threadFactory.newThread(() -> {
+                long intendedStart = firstIntendedStart;
+                while (!Thread.currentThread().isInterrupted()) {
+                    long currentTimestamp = System.nanoTime();
+                    if (intervalPerThread > 0) {
+                        try {
+                            waitUntil(intendedStart);
+                        } catch (InterruptedException e) {
+                            break; // the driver was interrupted
+                        }
+                    } else {
+                        intendedStart = currentTimestamp;
+                    }
+                    if (intendedStart >= endTimestamp || currentTimestamp >= endTimestamp) {
+                        break;
+                    }
+                    call(intendedStart, intendedStart >= measureTimestamp, result);
+                    intendedStart += intervalPerThread;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+    }
+
+    private void runOpenLoop(long startTimestamp, long measureTimestamp, long endTimestamp, LoadResult result)
+        throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                                          new LinkedBlockingQueue<>(), threadFactory);
+        try {
+            for (long intendedStart = startTimestamp; intendedStart < endTimestamp; intendedStart += interval) {
+                waitUntil(intendedStart);
+                long callIntendedStart = intendedStart;
+                executor.execute(() -> call(callIntendedStart, callIntendedStart >= measureTimestamp, result));
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+
+    private void call(long intendedStart, boolean measured, LoadResult result) {
+        if (!measured) {
+            Trace trace = profiler.startAt(point, intendedStart);
+            try {
+                task.call();
+            } catch (Exception e) {
+                // the warmup calls are not recorded, failed or not
+            } finally {
+                profiler.discard(trace);
+            }
+            return;
+        }
+        long actualStart = System.nanoTime();
+        Trace trace = profiler.startAt(point, intendedStart);
+        boolean failed = false;
+        try {
+            task.call();
+        } catch (Exception e) {
+            trace.fail(e);
+            failed = true;
+        } finally {
+            profiler.end(trace);
+        }
+        long endTimestamp = System.nanoTime();
+        result.recordCall(endTimestamp - intendedStart, endTimestamp - actualStart, failed);
+    }
+
+    /**
+     * @throws InterruptedException if the thread is interrupted while waiting, since parking returns right
+     *                              away on an interrupted thread
+     */
+    private static void waitUntil(long timestamp) throws InterruptedException {
+        long remaining;
+        while ((remaining = timestamp - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for the next call");
+            }
+        }
+    }
+
+    private static void checkThreadsAndRate(int threads, double ratePerSecond) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        }
+        if (ratePerSecond < 0 || Double.isNaN(ratePerSecond) || Double.isInfinite(ratePerSecond)) {
+            throw new IllegalArgumentException("Invalid rate: " + ratePerSecond);
+        }
+        if (ratePerSecond > MAX_RATE_PER_SECOND) {
+            // the interval between two calls would round down to 0 nanoseconds, and never move on
+            throw new IllegalArgumentException("The rate must not exceed " + MAX_RATE_PER_SECOND + " calls per second: "
+                                               + ratePerSecond);
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that a driver interrupted by an exception doesn't keep the JVM alive.
+     */
+    private static class DriverThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Profiler load driver " + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcome of a {@link LoadDriver} run, without the warmup: the number of calls, the failed ones, the
+ * achieved rate, and two latency distributions. The latency is measured from the intended start of each
+ * call (hence corrected for the coordinated omission); the service time is measured from the actual start.
+ * Both are the same for a closed loop with no target rate.
+ */
+public class LoadResult {
+
+    private final String point;
+    private final LongAdder nrOfCalls = new LongAdder();
+    private final LongAdder nrOfFailures = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private volatile long durationNanos;
+
+    LoadResult(String point) {
+        this.point = point;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    void recordCall(long latencyNanos, long serviceTimeNanos, boolean failed) {
+        nrOfCalls.increment();
+        if (failed) {
+            nrOfFailures.increment();
+        }
+        latency.record(latencyNanos);
+        serviceTime.record(serviceTimeNanos);
+    }
+
+    void markEnded(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    public void print(ReportPrinter printer) {
+        printer.printReportLine("Profiler| load %s | calls: %d | failed: %d | rate: %.1f/s", point, getNrOfCalls(),
+                                getNrOfFailures(), getAchievedRate());
+        for (double percentile : PRINTED_PERCENTILES) {
+            printer.printReportLine("Profiler|     p%-6s | latency: %10.3f ms | service time: %10.3f ms",
+                                    percentile, getLatencyAtPercentile(percentile) / 1000000.0,
+                                    getServiceTimeAtPercentile(percentile) / 1000000.0); // nanos to millis
+        }
+        printer.printReportLine("Profiler|     max     | latency: %10.3f ms | service time: %10.3f ms",
+                                latency.getMaxValue() / 1000000.0, serviceTime.getMaxValue() / 1000000.0); // nanos to millis
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public String getPoint() {
+        return point;
+    }
+
+    public long getNrOfCalls() {
+        return nrOfCalls.longValue();
+    }
+
+    public long getNrOfFailures() {
+        return nrOfFailures.longValue();
+    }
+
+    /**
+     * @return the measured part of the run (without the warmup), in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the number of calls per second that were actually made
+     */
+    public double getAchievedRate() {
+        return durationNanos > 0 ? getNrOfCalls() * 1000000000.0 / durationNanos : 0;
+    }
+
+    /**
+     * @return the latency (from the intended start of the calls) at the given percentile, in nanoseconds
+     */
+    public long getLatencyAtPercentile(double percentile) {
+        return Math.min(LatencyHistogram.getValueAtPercentile(latency.getCounts(), percentile), latency.getMaxValue());
+    }
+
+    /**
+     * @return the service time (from the actual start of the calls) at the given percentile, in nanoseconds
+     */
+    public long getServiceTimeAtPercentile(double percentile) {
+        return Math.min(LatencyHistogram.getValueAtPercentile(serviceTime.getCounts(), percentile), serviceTime.getMaxValue());
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    private static final double[] PRINTED_PERCENTILES = {50, 90, 99, 99.9};
+
+}
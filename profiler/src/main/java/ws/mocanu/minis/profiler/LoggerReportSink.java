@@ -0,0 +1,54 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A report sink that logs each report as a single message of a {@link java.util.logging.Logger}, so that
+ * reports go wherever the application's logging is configured to go (including SLF4J, through its
+ * {@code jul-to-slf4j} bridge).
+ */
+public class LoggerReportSink implements ReportSink {
+
+    private final Logger logger;
+    private final Level level;
+
+    public LoggerReportSink() {
+        this(Logger.getLogger(Profiler.class.getName()), Level.INFO);
+    }
+
+    public LoggerReportSink(Logger logger, Level level) {
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public void publish(List<String> reportLines) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, "Profiler report:" + System.lineSeparator() + String.join(System.lineSeparator(), reportLines));
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+}
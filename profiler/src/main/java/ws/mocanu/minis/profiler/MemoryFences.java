@@ -0,0 +1,43 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+/**
+ * The memory fence needed by the seqlock of the shared memory slots (see {@link SharedMemoryLayout}). The
+ * slots are plain memory-mapped bytes, so nothing orders their reads and writes by itself. A volatile write
+ * followed by a volatile read of the same field orders the accesses around it both ways: the ones before
+ * cannot move after the write (release), the ones after cannot move before the read (acquire), and the two
+ * volatile accesses keep their order. HotSpot compiles the pair into a full fence, with no internal API.
+ */
+final class MemoryFences {
+
+    private static volatile int fence;
+
+    private MemoryFences() {
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Keeps the loads and stores before the fence from being reordered with the ones after it.
+     */
+    static void fullFence() {
+        fence = 0;
+        int ignored = fence; // the volatile read is the second half of the fence
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * The profiler used as {@link Profiler#lets} when the profiling is disabled through the
+ * {@link Profiler#ENABLED_PROPERTY} system property. It records nothing, starts no thread, opens no socket
+ * or file, and hands out a single shared trace, so the timed code allocates nothing either. The shared
+ * trace ignores the outcome set on it, so the threads don't write to it. The reports, snapshots and queries
+ * all see an empty profiler.
+ */
+final class NoopProfiler extends Profiler {
+
+    private final Trace noopTrace = new NoopTrace(this);
+
+    NoopProfiler() {
+        super(false);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    @Override
+    public void setHttpControlOnPort(int port) {
+    }
+
+    @Override
+    public void setExportToCollector(String host, int port, long intervalMillis) {
+    }
+
+    @Override
+    public void setSharedMemoryFile(File file, int maxPoints, long intervalMillis) {
+    }
+
+    @Override
+    public void setReportSinks(ReportSink... sinks) {
+    }
+
+    @Override
+    public void setReportSchedule(long idleMillis, long periodMillis) {
+    }
+
+    @Override
+    public void setGcPauseCorrelation(boolean enabled) {
+    }
+
+    @Override
+    public void setLatencyHeatmap(int columns, long columnMillis, String... points) {
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    @Override
+    public Trace start(String point) {
+        return noopTrace;
+    }
+
+    @Override
+    public Trace start(String point, TagSet tags) {
+        return noopTrace;
+    }
+
+    @Override
+    Trace startAt(String point, long startTimestamp) {
+        return noopTrace;
+    }
+
+    @Override
+    public Trace startWithInheritedName(String pointSuffix) {
+        return noopTrace;
+    }
+
+    @Override
+    public <T> Callable<T> timeCallable(String point, Callable<T> target) {
+        return target;
+    }
+
+    @Override
+    public <T> T time(String point, Callable<T> target) throws Exception {
+        return target.call();
+    }
+
+    @Override
+    public void time(String point, Runnable target) {
+        target.run();
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void end(Trace trace) {
+    }
+
+    @Override
+    void discard(Trace trace) {
+    }
+
+    @Override
+    public void mergeExecCounters(ExecCounters counters) {
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * The trace shared by all the threads; all its mutators do nothing.
+     */
+    private static final class NoopTrace extends Trace {
+
+        private NoopTrace(Profiler profiler) {
+            super(profiler, "NOOP", 0, null, null);
+        }
+
+        @Override
+        public void fail() {
+        }
+
+        @Override
+        public void fail(Throwable cause) {
+        }
+
+        @Override
+        public void fail(String status) {
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+
+    }
+
+}
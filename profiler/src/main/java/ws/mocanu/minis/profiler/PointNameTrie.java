@@ -0,0 +1,214 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A trie over the dotted names of the code points (e.g. {@code MultiThreadedService.method2.callable-3}),
+ * which rolls up the statistics of all the points named under each prefix ({@code MultiThreadedService} and
+ * {@code MultiThreadedService.method2} in the example). The trie is updated as the points are registered and
+ * evicted; the rollups themselves are summed up from the live records when asked for.
+ * <p>
+ * Points nested in the call tree under another point of the same prefix (directly or through points of
+ * other prefixes) are not counted in that prefix's rollup, since their time is already part of that
+ * ancestor's time. The rollup of a prefix is hence made of
+ * the entries into that prefix: {@code MultiThreadedService} rolls up the calls of its methods, while
+ * {@code MultiThreadedService.method2} rolls up all the {@code callable-N} points called by {@code method2}.
+ * The point named exactly like a prefix is never part of that prefix's rollup.
+ */
+class PointNameTrie {
+
+    private final Map<String, Node> roots = new TreeMap<>();
+    private final Map<String, Node> nodesByPrefix = new HashMap<>();
+
+    /**
+     * The entries of all the points, including the ones without any prefix, which still pass the prefixes
+     * of their ancestors on to their children.
+     */
+    private final Map<String, Entry> entriesByPoint = new HashMap<>();
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param parentPoint the point of the parent in the call tree, or null for the points directly under root
+     */
+    synchronized void add(String point, String parentPoint, ExecRecord record) {
+        Entry entry = new Entry(point, ancestorPrefixesOf(parentPoint), record);
+        entriesByPoint.put(point, entry);
+        Map<String, Node> siblings = roots;
+        int separator = point.indexOf('.');
+        while (separator > 0) {
+            String prefix = point.substring(0, separator);
+            Node node = nodesByPrefix.get(prefix);
+            if (node == null) {
+                node = new Node(prefix, depthOf(prefix));
+                siblings.put(prefix, node);
+                nodesByPrefix.put(prefix, node);
+            }
+            node.entries.add(entry);
+            siblings = node.children;
+            separator = point.indexOf('.', separator + 1);
+        }
+    }
+
+    synchronized void remove(String point) {
+        entriesByPoint.remove(point);
+        Map<String, Node> siblings = roots;
+        int separator = point.indexOf('.');
+        while (separator > 0) {
+            String prefix = point.substring(0, separator);
+            Node node = nodesByPrefix.get(prefix);
+            if (node == null) {
+                return;
+            }
+            node.entries.removeIf(entry -> entry.point.equals(point));
+            if (node.entries.isEmpty()) {
+                // the entries of the nested prefixes are a subset of these ones, so they are all gone too
+                siblings.remove(prefix);
+                removeNodes(node);
+                return;
+            }
+            siblings = node.children;
+            separator = point.indexOf('.', separator + 1);
+        }
+    }
+
+    synchronized void clear() {
+        roots.clear();
+        nodesByPrefix.clear();
+        entriesByPoint.clear();
+    }
+
+    /**
+     * @return the rollups of all the prefixes, parents before their children; the point of each rollup is its
+     *     prefix and its parent point is the enclosing prefix
+     */
+    synchronized List<PointStats> getRollups() {
+        List<PointStats> rollups = new ArrayList<>();
+        for (Node node : roots.values()) {
+            collectRollups(node, null, rollups);
+        }
+        return rollups;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void collectRollups(Node node, String parentPrefix, List<PointStats> rollups) {
+        List<ExecRecord> records = new ArrayList<>();
+        for (Entry entry : node.entries) {
+            if (!entry.ancestorPrefixes.contains(node.prefix)) {
+                records.add(entry.record); // the nested ones are already counted in their ancestor
+            }
+        }
+        rollups.add(PointStats.merge(node.prefix, parentPrefix, node.depth, records));
+        for (Node child : node.children.values()) {
+            collectRollups(child, node.prefix, rollups);
+        }
+    }
+
+    /**
+     * @return the prefixes of the names of the given parent point and of all its own ancestors, i.e. the
+     *     ancestor prefixes of the parent's children
+     */
+    private Set<String> ancestorPrefixesOf(String parentPoint) {
+        if (parentPoint == null) {
+            return Collections.emptySet();
+        }
+        Entry parentEntry = entriesByPoint.get(parentPoint);
+        return prefixesOf(parentPoint, parentEntry != null ? parentEntry.ancestorPrefixes : Collections.emptySet());
+    }
+
+    /**
+     * @return the given prefixes plus the ones of the given point, or the given set itself if the point adds
+     *     no new prefix, so that the entries of a deep call tree share their sets
+     */
+    private static Set<String> prefixesOf(String point, Set<String> prefixes) {
+        Set<String> result = prefixes;
+        for (int separator = point.indexOf('.'); separator > 0; separator = point.indexOf('.', separator + 1)) {
+            String prefix = point.substring(0, separator);
+            if (!result.contains(prefix)) {
+                if (result == prefixes) {
+                    result = new HashSet<>(prefixes);
+                }
+                result.add(prefix);
+            }
+        }
+        return result == prefixes ? prefixes : Collections.unmodifiableSet(result);
+    }
+
+    private void removeNodes(Node node) {
+        nodesByPrefix.remove(node.prefix);
+        for (Node child : node.children.values()) {
+            removeNodes(child);
+        }
+    }
+
+    private static int depthOf(String prefix) {
+        int depth = 1;
+        for (int index = prefix.indexOf('.'); index >= 0; index = prefix.indexOf('.', index + 1)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static class Node {
+
+        private final String prefix;
+        private final int depth;
+        private final Map<String, Node> children = new TreeMap<>();
+
+        /**
+         * All the points named under this prefix, at any level.
+         */
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Node(String prefix, int depth) {
+            this.prefix = prefix;
+            this.depth = depth;
+        }
+
+    }
+
+    private static class Entry {
+
+        private final String point;
+
+        /**
+         * The prefixes of the names of all the ancestors of the point in the call tree.
+         */
+        private final Set<String> ancestorPrefixes;
+        private final ExecRecord record;
+
+        private Entry(String point, Set<String> ancestorPrefixes, ExecRecord record) {
+            this.point = point;
+            this.ancestorPrefixes = ancestorPrefixes;
+            this.record = record;
+        }
+
+    }
+
+}
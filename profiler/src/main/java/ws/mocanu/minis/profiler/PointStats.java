@@ -0,0 +1,187 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Collection;
+
+/**
+ * The statistics of a code point at the time a {@link ProfilerSnapshot} was taken. All durations are in
+ * nanoseconds.
+ */
+public class PointStats {
+
+    private final String point;
+    private final String parentPoint;
+    private final int depth;
+    private final long nrOfRuns;
+    private final long totalRunTime;
+    private final long p50RunTime;
+    private final long p90RunTime;
+    private final long p99RunTime;
+    private final long maxRunTime;
+    private final long nrOfFailures;
+    private final long failureRunTime;
+    private final long successP99RunTime;
+
+    public PointStats(String point, String parentPoint, int depth, long nrOfRuns, long totalRunTime,
+                      long p50RunTime, long p90RunTime, long p99RunTime, long maxRunTime) {
+        this(point, parentPoint, depth, nrOfRuns, totalRunTime, p50RunTime, p90RunTime, p99RunTime, maxRunTime,
+             0, 0, p99RunTime);
+    }
+
+    public PointStats(String point, String parentPoint, int depth, long nrOfRuns, long totalRunTime,
+                      long p50RunTime, long p90RunTime, long p99RunTime, long maxRunTime,
+                      long nrOfFailures, long failureRunTime, long successP99RunTime) {
+        this.point = point;
+        this.parentPoint = parentPoint;
+        this.depth = depth;
+        this.nrOfRuns = nrOfRuns;
+        this.totalRunTime = totalRunTime;
+        // percentiles come from histogram buckets, so they can slightly overshoot the exact max
+        this.p50RunTime = maxRunTime > 0 ? Math.min(p50RunTime, maxRunTime) : p50RunTime;
+        this.p90RunTime = maxRunTime > 0 ? Math.min(p90RunTime, maxRunTime) : p90RunTime;
+        this.p99RunTime = maxRunTime > 0 ? Math.min(p99RunTime, maxRunTime) : p99RunTime;
+        this.maxRunTime = maxRunTime;
+        this.nrOfFailures = nrOfFailures;
+        this.failureRunTime = failureRunTime;
+        this.successP99RunTime = maxRunTime > 0 ? Math.min(successP99RunTime, maxRunTime) : successP99RunTime;
+    }
+
+    static PointStats of(String point, String parentPoint, int depth, ExecRecord record) {
+        long[] histogramCounts = record.getHistogram().getCounts();
+        return new PointStats(point, parentPoint, depth, record.getNrOfRuns(), record.getTotalRunTime(),
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 50),
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 90),
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 99),
+                              record.getHistogram().getMaxValue(), record.getNrOfFailures(),
+                              record.getFailureRunTime(),
+                              LatencyHistogram.getValueAtPercentile(record.getSuccessHistogramCounts(), 99));
+    }
+
+    /**
+     * Sums up the statistics of several records, e.g. the ones of the points under a name prefix or the ones
+     * of a point's tag sets.
+     */
+    static PointStats merge(String point, String parentPoint, int depth, Collection<? extends RunRecord> records) {
+        long nrOfRuns = 0;
+        long totalRunTime = 0;
+        long maxRunTime = 0;
+        long nrOfFailures = 0;
+        long failureRunTime = 0;
+        long[] histogramCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        long[] successHistogramCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (RunRecord record : records) {
+            nrOfRuns += record.getNrOfRuns();
+            totalRunTime += record.getTotalRunTime();
+            maxRunTime = Math.max(maxRunTime, record.getHistogram().getMaxValue());
+            nrOfFailures += record.getNrOfFailures();
+            failureRunTime += record.getFailureRunTime();
+            long[] recordCounts = record.getHistogram().getCounts();
+            long[] recordSuccessCounts = record.getSuccessHistogramCounts();
+            for (int index = 0; index < histogramCounts.length; index++) {
+                histogramCounts[index] += recordCounts[index];
+                successHistogramCounts[index] += recordSuccessCounts[index];
+            }
+        }
+        return new PointStats(point, parentPoint, depth, nrOfRuns, totalRunTime,
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 50),
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 90),
+                              LatencyHistogram.getValueAtPercentile(histogramCounts, 99),
+                              maxRunTime, nrOfFailures, failureRunTime,
+                              LatencyHistogram.getValueAtPercentile(successHistogramCounts, 99));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public String getPoint() {
+        return point;
+    }
+
+    /**
+     * @return the point of the parent in the call tree, or null for the points directly under root (and for
+     *     the points of a snapshot loaded from a file)
+     */
+    public String getParentPoint() {
+        return parentPoint;
+    }
+
+    /**
+     * @return the depth of the point in the call tree, starting with 1 for the points directly under root
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNrOfRuns() {
+        return nrOfRuns;
+    }
+
+    public long getTotalRunTime() {
+        return totalRunTime;
+    }
+
+    public long getMeanRunTime() {
+        return nrOfRuns > 0 ? totalRunTime / nrOfRuns : 0;
+    }
+
+    public long getP50RunTime() {
+        return p50RunTime;
+    }
+
+    public long getP90RunTime() {
+        return p90RunTime;
+    }
+
+    public long getP99RunTime() {
+        return p99RunTime;
+    }
+
+    public long getMaxRunTime() {
+        return maxRunTime;
+    }
+
+    public long getNrOfFailures() {
+        return nrOfFailures;
+    }
+
+    public long getFailureRunTime() {
+        return failureRunTime;
+    }
+
+    /**
+     * @return the percentage of the runs that failed, between 0 and 100
+     */
+    public double getErrorRate() {
+        return nrOfRuns > 0 ? nrOfFailures * 100.0 / nrOfRuns : 0;
+    }
+
+    /**
+     * @return the mean duration of the successful runs only
+     */
+    public long getSuccessMeanRunTime() {
+        long nrOfSuccesses = nrOfRuns - nrOfFailures;
+        return nrOfSuccesses > 0 ? Math.max(0, totalRunTime - failureRunTime) / nrOfSuccesses : 0;
+    }
+
+    /**
+     * @return the 99th percentile of the durations of the successful runs only
+     */
+    public long getSuccessP99RunTime() {
+        return successP99RunTime;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assertions over the statistics of the profiled code points, to be used in tests for catching latency
+ * regressions. Failed assertions throw {@link AssertionError}, like the ones of any test framework:
+ *
+ * <pre>
+ * assertThat(point("RequestController.handleRequest")).wasExecuted().p99Below(500);
+ * assertNoRegressions(ProfilerSnapshot.load(baselineFile), new RegressionThresholds());
+ * </pre>
+ */
+public class ProfilerAssertions {
+
+    private ProfilerAssertions() {
+    }
+
+    /**
+     * @return the current statistics of the given code point of {@link Profiler#lets}
+     */
+    public static PointStats point(String point) {
+        return point(Profiler.lets, point);
+    }
+
+    /**
+     * @return the current statistics of the given code point of the given profiler; a point that was never
+     *     executed has statistics with no runs
+     */
+    public static PointStats point(Profiler profiler, String point) {
+        PointStats stats = profiler.snapshot().getPoint(point);
+        return stats != null ? stats : new PointStats(point, null, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static PointAssert assertThat(PointStats stats) {
+        return new PointAssert(stats);
+    }
+
+    /**
+     * Compares the current statistics of {@link Profiler#lets} against the given baseline and fails if any
+     * code point regressed beyond the given thresholds.
+     */
+    public static void assertNoRegressions(ProfilerSnapshot baseline, RegressionThresholds thresholds) {
+        assertNoRegressions(baseline, Profiler.lets.snapshot(), thresholds);
+    }
+
+    public static void assertNoRegressions(ProfilerSnapshot baseline, ProfilerSnapshot current, RegressionThresholds thresholds) {
+        SnapshotComparison comparison = new SnapshotComparison(baseline, current, thresholds);
+        if (comparison.hasRegressions()) {
+            StringBuilder message = new StringBuilder("Performance regressions found:");
+            for (String regression : comparison.getRegressions()) {
+                message.append("\n    ").append(regression);
+            }
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Fluent assertions over the statistics of a single code point. All the duration limits are exclusive.
+     */
+    public static class PointAssert {
+
+        private final PointStats stats;
+
+        PointAssert(PointStats stats) {
+            this.stats = stats;
+        }
+
+        public PointAssert wasExecuted() {
+            return runsAtLeast(1);
+        }
+
+        public PointAssert runsAtLeast(long runs) {
+            if (stats.getNrOfRuns() < runs) {
+                throw new AssertionError(String.format("%s: expected at least %d runs, but got %d",
+                                                       stats.getPoint(), runs, stats.getNrOfRuns()));
+            }
+            return this;
+        }
+
+        public PointAssert meanBelow(long millis) {
+            return durationBelow("mean", stats.getMeanRunTime(), millis);
+        }
+
+        public PointAssert p50Below(long millis) {
+            return durationBelow("p50", stats.getP50RunTime(), millis);
+        }
+
+        public PointAssert p90Below(long millis) {
+            return durationBelow("p90", stats.getP90RunTime(), millis);
+        }
+
+        public PointAssert p99Below(long millis) {
+            return durationBelow("p99", stats.getP99RunTime(), millis);
+        }
+
+        public PointAssert maxBelow(long millis) {
+            return durationBelow("max", stats.getMaxRunTime(), millis);
+        }
+
+        private PointAssert durationBelow(String statistic, long actualNanos, long limitMillis) {
+            wasExecuted();
+            if (actualNanos >= TimeUnit.MILLISECONDS.toNanos(limitMillis)) {
+                throw new AssertionError(String.format("%s: expected %s below %d ms, but was %.3f ms (over %d runs)",
+                                                       stats.getPoint(), statistic, limitMillis,
+                                                       actualNanos / 1000000.0, stats.getNrOfRuns()));
+            }
+            return this;
+        }
+
+    }
+
+}
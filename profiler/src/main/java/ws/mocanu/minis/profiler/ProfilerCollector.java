@@ -0,0 +1,137 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the statistics pushed by the {@link ProfilerExporter}s of several JVMs and merges them into a
+ * single {@link Profiler}, whose report then covers the whole fleet. The merged profiler can be served
+ * with an {@link HttpControl}, exactly like a local one.
+ *
+ * Can be started as a standalone process:
+ * <pre>
+ * java -cp profiler.jar ws.mocanu.minis.profiler.ProfilerCollector &lt;collectorPort&gt; [&lt;httpControlPort&gt;]
+ * </pre>
+ */
+public class ProfilerCollector extends Thread {
+
+    private Profiler mergedProfiler;
+    private volatile boolean keepRunning = true;
+    private int listeningPort;
+    private ServerSocket serverSocket;
+
+    /**
+     * The timestamp of the last frame received from each source.
+     */
+    private final Map<String, Long> sources = new ConcurrentHashMap<>();
+
+    public void init(int listeningPort, Profiler mergedProfiler) {
+        this.setDaemon(true);
+        this.setName("Profiler collector");
+        this.listeningPort = listeningPort;
+        this.mergedProfiler = mergedProfiler;
+    }
+
+    public void prepareToStop() {
+        keepRunning = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Profiler collector error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            serverSocket = new ServerSocket(listeningPort);
+            while (keepRunning) {
+                Socket clientSocket = serverSocket.accept();
+                Thread connectionThread = new Thread(() -> handleClientConnection(clientSocket));
+                connectionThread.setDaemon(true);
+                connectionThread.setName("Profiler collector connection " + clientSocket.getRemoteSocketAddress());
+                connectionThread.start();
+            }
+        } catch (Exception e) {
+            if (keepRunning) {
+                e.printStackTrace();
+                System.err.println("Profiler collector error: " + e.getMessage());
+            }
+        }
+    }
+
+    public Profiler getMergedProfiler() {
+        return mergedProfiler;
+    }
+
+    /**
+     * @return the sources that pushed statistics to this collector, mapped to the timestamp (milliseconds
+     *     since the epoch) of their last frame
+     */
+    public Map<String, Long> getSources() {
+        return new LinkedHashMap<>(sources);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void handleClientConnection(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (keepRunning) {
+                ProfilerProtocol.Frame frame = ProfilerProtocol.readFrame(in);
+                for (ExecCounters counters : frame.getPoints()) {
+                    mergedProfiler.mergeExecCounters(counters);
+                }
+                sources.put(frame.getSource(), frame.getTimestamp());
+            }
+        } catch (EOFException e) {
+            // the exporter closed the connection
+        } catch (IOException e) {
+            System.err.println("Profiler collector error: " + e.getMessage());
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ProfilerCollector <collectorPort> [<httpControlPort>]");
+            System.exit(1);
+        }
+
+        Profiler mergedProfiler = new Profiler(false);
+        if (args.length > 1) {
+            mergedProfiler.setHttpControlOnPort(Integer.parseInt(args[1]));
+        }
+
+        ProfilerCollector collector = new ProfilerCollector();
+        collector.init(Integer.parseInt(args[0]), mergedProfiler);
+        collector.start();
+        collector.join();
+    }
+
+}
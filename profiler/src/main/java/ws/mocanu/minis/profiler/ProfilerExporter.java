@@ -0,0 +1,148 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Periodically pushes the statistics of a profiler to a {@link ProfilerCollector}, over the binary protocol
+ * described in {@link ProfilerProtocol}. Only the points that changed since the last successful push are
+ * sent (together with their parents, so the collector can rebuild the call tree), as deltas.
+ */
+public class ProfilerExporter extends Thread {
+
+    private Profiler exportedProfiler;
+    private volatile boolean keepRunning = true;
+    private String collectorHost;
+    private int collectorPort;
+    private long intervalMillis;
+    private String sourceName;
+
+    private Socket socket;
+    private DataOutputStream out;
+
+    /**
+     * The counters sent with the last successful push, mapped to their {@link ExecCounters#getKey()}. Their
+     * histograms only hold the non-empty buckets, and the counters of the points that didn't change are
+     * carried over from push to push without being copied again.
+     */
+    private final Map<String, ExecCounters> lastSentCounters = new HashMap<>();
+
+    public void init(String collectorHost, int collectorPort, long intervalMillis, Profiler exportedProfiler) {
+        this.setDaemon(true);
+        this.setName("Profiler exporter");
+        this.collectorHost = collectorHost;
+        this.collectorPort = collectorPort;
+        this.intervalMillis = intervalMillis;
+        this.exportedProfiler = exportedProfiler;
+        this.sourceName = ManagementFactory.getRuntimeMXBean().getName();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ProfilerExporter.this.prepareToStop();
+            try {
+                ProfilerExporter.this.interrupt();
+                ProfilerExporter.this.join(intervalMillis);
+            } catch (InterruptedException ignored) {
+                // ignored exception
+            }
+        }));
+    }
+
+    public void prepareToStop() {
+        keepRunning = false;
+    }
+
+    @Override
+    public void run() {
+        while (keepRunning) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                // woken up for stopping, push the last delta below
+            }
+            pushDelta();
+        }
+        closeConnection();
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void pushDelta() {
+        List<ExecCounters> currentCounters = exportedProfiler.getExecCounters(lastSentCounters);
+        List<ExecCounters> deltas = computeDeltas(currentCounters);
+        try {
+            if (socket == null) {
+                socket = new Socket(collectorHost, collectorPort);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+            ProfilerProtocol.writeFrame(out, sourceName, System.currentTimeMillis(), deltas);
+        } catch (IOException e) {
+            System.err.println("Profiler exporter error: " + e.getMessage());
+            closeConnection();
+            return;
+        }
+
+        lastSentCounters.clear();
+        for (ExecCounters counters : currentCounters) {
+            lastSentCounters.put(counters.getKey(), counters);
+        }
+    }
+
+    /**
+     * Computes the deltas of the points that changed, plus the ones of their parents, in call tree order.
+     */
+    private List<ExecCounters> computeDeltas(List<ExecCounters> currentCounters) {
+        List<ExecCounters> deltas = new ArrayList<>();
+        Set<String> neededPoints = new HashSet<>();
+        for (int index = currentCounters.size() - 1; index >= 0; index--) {
+            ExecCounters counters = currentCounters.get(index);
+            ExecCounters previous = lastSentCounters.get(counters.getKey());
+            boolean changed = counters != previous && counters.getNrOfRuns() != (previous != null ? previous.getNrOfRuns() : 0);
+            if (changed || neededPoints.contains(counters.getKey())) {
+                deltas.add(counters.minus(previous));
+                if (counters.getParentPoint() != null) {
+                    neededPoints.add(counters.getParentPoint());
+                }
+            }
+        }
+        Collections.reverse(deltas);
+        return deltas;
+    }
+
+    private void closeConnection() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Profiler exporter error: " + e.getMessage());
+        }
+        socket = null;
+        out = null;
+    }
+
+}
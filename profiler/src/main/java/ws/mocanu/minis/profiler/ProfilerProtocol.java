@@ -0,0 +1,257 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary protocol spoken between a {@link ProfilerExporter} and a {@link ProfilerCollector}. The
+ * exporter sends a stream of frames over a single connection, each frame having the layout below (numbers
+ * marked as "var" are unsigned LEB128 variable length integers, strings are written with
+ * {@link DataOutputStream#writeUTF(String)}):
+ *
+ * <pre>
+ * int    magic (0x4D505246, "MPRF")
+ * byte   protocol version
+ * string source name (e.g. pid@host of the exporting JVM)
+ * long   timestamp of the frame, in milliseconds since the epoch
+ * var    size of the rest of the frame, in bytes
+ * var    number of points
+ * for each point, parents before children:
+ *   string point name
+ *   string parent point name (empty for the points directly under root)
+ *   string tag set in canonical form (empty for the counters of the whole point)
+ *   var    runs, total run time (ns), max run time (ns)
+ *   var    measured runs, measured run time (ns), CPU time (ns), allocated bytes
+ *   histogram of the run times
+ *   var    failed runs, failed run time (ns), max failed run time (ns)
+ *   histogram of the failed run times
+ * </pre>
+ *
+ * A histogram is written as the number of non-empty buckets (var), followed, for each non-empty bucket, by
+ * the difference between its index and the index of the previous non-empty bucket (var) and by its count
+ * (var).
+ *
+ * All the counters are deltas since the previous frame of the same source, except for the max run time.
+ * The counters of the tag sets of a point follow the ones of the whole point, and are included in them.
+ * <p>
+ * The size of the frame is checked against {@link #MAX_FRAME_BYTES} before anything else is read, so what a
+ * single frame makes the collector allocate is bounded by the bytes it actually received.
+ */
+public class ProfilerProtocol {
+
+    public static final int MAGIC = 0x4D505246;
+    public static final byte VERSION = 4;
+
+    /**
+     * The maximum size of a frame. A frame with all the {@link Profiler#DEFAULT_MAX_POINTS} points of a
+     * profiler, each with a few dozen non-empty histogram buckets, takes a few megabytes.
+     */
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of points (tag sets included) accepted in a frame: ten times the default point
+     * limit of a profiler.
+     */
+    public static final int MAX_FRAME_POINTS = 10 * Profiler.DEFAULT_MAX_POINTS;
+
+    private ProfilerProtocol() {
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static void writeFrame(DataOutputStream out, String source, long timestamp, List<ExecCounters> points)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(source);
+        out.writeLong(timestamp);
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        writeVarLong(body, points.size());
+        for (ExecCounters counters : points) {
+            body.writeUTF(counters.getPoint());
+            body.writeUTF(counters.getParentPoint() == null ? "" : counters.getParentPoint());
+            body.writeUTF(counters.getTags() == null ? "" : counters.getTags());
+            writeVarLong(body, counters.getNrOfRuns());
+            writeVarLong(body, counters.getTotalRunTime());
+            writeVarLong(body, counters.getMaxRunTime());
+            writeVarLong(body, counters.getNrOfMeasuredRuns());
+            writeVarLong(body, counters.getMeasuredRunTime());
+            writeVarLong(body, counters.getTotalCpuTime());
+            writeVarLong(body, counters.getTotalAllocatedBytes());
+            writeHistogram(body, counters.getHistogram());
+            writeVarLong(body, counters.getNrOfFailures());
+            writeVarLong(body, counters.getFailureRunTime());
+            writeVarLong(body, counters.getMaxFailureRunTime());
+            writeHistogram(body, counters.getFailureHistogram());
+        }
+        body.flush();
+        writeVarLong(out, bodyBytes.size());
+        bodyBytes.writeTo(out);
+        out.flush();
+    }
+
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Invalid profiler frame, bad magic number: " + Integer.toHexString(magic));
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported profiler protocol version: " + version);
+        }
+        String source = in.readUTF();
+        long timestamp = in.readLong();
+        long frameSize = readVarLong(in);
+        if (frameSize > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid profiler frame, too large: " + frameSize + " bytes");
+        }
+        byte[] frameBytes = new byte[(int) frameSize];
+        in.readFully(frameBytes);
+        return readFrameBody(source, timestamp, new DataInputStream(new ByteArrayInputStream(frameBytes)));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static Frame readFrameBody(String source, long timestamp, DataInputStream in) throws IOException {
+        long nrOfPoints = readVarLong(in);
+        if (nrOfPoints > MAX_FRAME_POINTS) {
+            throw new IOException("Invalid profiler frame, too many points: " + nrOfPoints);
+        }
+        List<ExecCounters> points = new ArrayList<>(); // not sized from the frame, until the points are actually read
+        for (int pointIndex = 0; pointIndex < nrOfPoints; pointIndex++) {
+            String point = in.readUTF();
+            String parentPoint = in.readUTF();
+            String tags = in.readUTF();
+            long nrOfRuns = readVarLong(in);
+            long totalRunTime = readVarLong(in);
+            long maxRunTime = readVarLong(in);
+            long nrOfMeasuredRuns = readVarLong(in);
+            long measuredRunTime = readVarLong(in);
+            long totalCpuTime = readVarLong(in);
+            long totalAllocatedBytes = readVarLong(in);
+            SparseHistogram histogram = readHistogram(in);
+            long nrOfFailures = readVarLong(in);
+            long failureRunTime = readVarLong(in);
+            long maxFailureRunTime = readVarLong(in);
+            SparseHistogram failureHistogram = readHistogram(in);
+
+            points.add(new ExecCounters(point, parentPoint.isEmpty() ? null : parentPoint, tags.isEmpty() ? null : tags,
+                                        nrOfRuns, totalRunTime, maxRunTime, nrOfMeasuredRuns, measuredRunTime,
+                                        totalCpuTime, totalAllocatedBytes, histogram, nrOfFailures,
+                                        failureRunTime, maxFailureRunTime, failureHistogram));
+        }
+        if (in.available() > 0) {
+            throw new IOException("Invalid profiler frame, " + in.available() + " bytes after the last point");
+        }
+        return new Frame(source, timestamp, points);
+    }
+
+    private static void writeHistogram(DataOutputStream out, SparseHistogram histogram) throws IOException {
+        writeVarLong(out, histogram.size());
+        int previousIndex = 0;
+        for (int position = 0; position < histogram.size(); position++) {
+            writeVarLong(out, histogram.getBucket(position) - previousIndex);
+            writeVarLong(out, histogram.getCount(position));
+            previousIndex = histogram.getBucket(position);
+        }
+    }
+
+    private static SparseHistogram readHistogram(DataInputStream in) throws IOException {
+        long nonEmptyBuckets = readVarLong(in);
+        if (nonEmptyBuckets > LatencyHistogram.BUCKET_COUNT || nonEmptyBuckets > in.available()) {
+            throw new IOException("Invalid profiler frame, too many histogram buckets: " + nonEmptyBuckets);
+        }
+        if (nonEmptyBuckets == 0) {
+            return SparseHistogram.EMPTY;
+        }
+        int[] buckets = new int[(int) nonEmptyBuckets];
+        long[] counts = new long[(int) nonEmptyBuckets];
+        long index = 0;
+        for (int position = 0; position < nonEmptyBuckets; position++) {
+            long indexDelta = readVarLong(in);
+            index += indexDelta;
+            if ((position > 0 && indexDelta == 0) || index >= LatencyHistogram.BUCKET_COUNT) {
+                throw new IOException("Invalid profiler frame, bad histogram bucket: " + index);
+            }
+            buckets[position] = (int) index;
+            counts[position] = readVarLong(in);
+        }
+        return new SparseHistogram(buckets, counts);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long remaining = Math.max(0, value);
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int currentByte = in.readUnsignedByte();
+            value |= (long) (currentByte & 0x7F) << shift;
+            if ((currentByte & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid profiler frame, variable length integer too long");
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * A frame received from an exporter.
+     */
+    public static class Frame {
+
+        private final String source;
+        private final long timestamp;
+        private final List<ExecCounters> points;
+
+        public Frame(String source, long timestamp, List<ExecCounters> points) {
+            this.source = source;
+            this.timestamp = timestamp;
+            this.points = points;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public List<ExecCounters> getPoints() {
+            return points;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A query over a {@link ProfilerSnapshot}, for getting to the hot spots without going through the whole
+ * report: filters the code points by name (prefix, regular expression), by depth and by subtree, then
+ * sorts them and keeps only the top ones. Without a sort order, the points come in call tree order.
+ *
+ * <pre>
+ * List&lt;PointStats&gt; worst = Profiler.lets.query(new ProfilerQuery().orderBy(ProfilerQuery.Order.P99).top(10));
+ * </pre>
+ */
+public class ProfilerQuery {
+
+    /**
+     * The orders the matching points can be sorted in, all descending.
+     */
+    public enum Order {
+        TOTAL, SELF, MEAN, P99, COUNT
+    }
+
+    private Order order;
+    private int top = Integer.MAX_VALUE;
+    private String prefix;
+    private Pattern pattern;
+    private int maxDepth = Integer.MAX_VALUE;
+    private String subtree;
+
+    public ProfilerQuery orderBy(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    public ProfilerQuery top(int top) {
+        if (top < 0) {
+            throw new IllegalArgumentException("The number of top points must not be negative: " + top);
+        }
+        this.top = top;
+        return this;
+    }
+
+    public ProfilerQuery withPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * @param regex a regular expression the whole point name must match
+     */
+    public ProfilerQuery withRegex(String regex) {
+        this.pattern = Pattern.compile(regex);
+        return this;
+    }
+
+    /**
+     * @param maxDepth the maximum depth of the points, 1 being the points directly under root, or the root
+     *                 of the subtree if one is selected
+     */
+    public ProfilerQuery maxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The maximum depth must not be negative: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param point the point whose subtree (including itself) is queried, instead of the whole call tree
+     */
+    public ProfilerQuery subtree(String point) {
+        this.subtree = point;
+        return this;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public List<PointStats> run(ProfilerSnapshot snapshot) {
+        List<PointStats> candidates = new ArrayList<>();
+        if (subtree != null) {
+            PointStats subtreeRoot = snapshot.getPoint(subtree);
+            if (subtreeRoot != null) {
+                collectSubtree(snapshot, subtreeRoot, 1, candidates);
+            }
+        } else {
+            for (PointStats stats : snapshot.getPoints()) {
+                if (stats.getDepth() <= maxDepth) {
+                    candidates.add(stats);
+                }
+            }
+        }
+
+        List<PointStats> result = new ArrayList<>();
+        for (PointStats stats : candidates) {
+            if ((prefix == null || stats.getPoint().startsWith(prefix))
+                && (pattern == null || pattern.matcher(stats.getPoint()).matches())) {
+                result.add(stats);
+            }
+        }
+        if (order != null) {
+            result.sort(comparator(snapshot).reversed());
+        }
+        return result.size() > top ? new ArrayList<>(result.subList(0, top)) : result;
+    }
+
+    /**
+     * Parses a sort order, case insensitive.
+     *
+     * @throws IllegalArgumentException for unknown orders
+     */
+    public static Order parseOrder(String order) {
+        return Order.valueOf(order.toUpperCase(Locale.ROOT));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static void printResult(List<PointStats> result, ProfilerSnapshot snapshot, ReportPrinter printer) {
+        int maxPointLength = 0;
+        for (PointStats stats : result) {
+            maxPointLength = Math.max(maxPointLength, stats.getPoint().length());
+        }
+        for (PointStats stats : result) {
+            printer.printReportLine("Profiler| %-" + (maxPointLength + 2) + "s| runs:%8d | total: %10d ms | self: %10d ms | avg: %10.3f ms | p99: %10.3f ms | errors: %5.1f%% | okAvg: %10.3f ms",
+                                    stats.getPoint(), stats.getNrOfRuns(), stats.getTotalRunTime() / 1000000,
+                                    snapshot.getSelfRunTime(stats) / 1000000, stats.getMeanRunTime() / 1000000.0,
+                                    stats.getP99RunTime() / 1000000.0, stats.getErrorRate(),
+                                    stats.getSuccessMeanRunTime() / 1000000.0); // nanos to millis
+        }
+    }
+
+    public static String toJson(List<PointStats> result, ProfilerSnapshot snapshot) {
+        StringBuilder json = new StringBuilder("{\"timestamp\":").append(snapshot.getTimestamp()).append(",\"points\":[");
+        for (int index = 0; index < result.size(); index++) {
+            PointStats stats = result.get(index);
+            json.append(index == 0 ? "" : ",")
+                .append("{\"point\":").append(Json.quote(stats.getPoint()))
+                .append(",\"parent\":").append(Json.quote(stats.getParentPoint()))
+                .append(",\"depth\":").append(stats.getDepth())
+                .append(",\"runs\":").append(stats.getNrOfRuns())
+                .append(",\"totalMs\":").append(Json.millis(stats.getTotalRunTime()))
+                .append(",\"selfMs\":").append(Json.millis(snapshot.getSelfRunTime(stats)))
+                .append(",\"avgMs\":").append(Json.millis(stats.getMeanRunTime()))
+                .append(",\"p50Ms\":").append(Json.millis(stats.getP50RunTime()))
+                .append(",\"p90Ms\":").append(Json.millis(stats.getP90RunTime()))
+                .append(",\"p99Ms\":").append(Json.millis(stats.getP99RunTime()))
+                .append(",\"maxMs\":").append(Json.millis(stats.getMaxRunTime()))
+                .append(",\"failures\":").append(stats.getNrOfFailures())
+                .append(",\"errorRate\":").append(String.format(Locale.ROOT, "%.2f", stats.getErrorRate()))
+                .append(",\"successAvgMs\":").append(Json.millis(stats.getSuccessMeanRunTime()))
+                .append(",\"successP99Ms\":").append(Json.millis(stats.getSuccessP99RunTime()))
+                .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void collectSubtree(ProfilerSnapshot snapshot, PointStats stats, int depth, List<PointStats> result) {
+        if (depth > maxDepth) {
+            return;
+        }
+        result.add(stats);
+        for (PointStats child : snapshot.getChildren(stats.getPoint())) {
+            collectSubtree(snapshot, child, depth + 1, result);
+        }
+    }
+
+    private Comparator<PointStats> comparator(ProfilerSnapshot snapshot) {
+        switch (order) {
+            case SELF:
+                return Comparator.comparingLong(snapshot::getSelfRunTime);
+            case MEAN:
+                return Comparator.comparingLong(PointStats::getMeanRunTime);
+            case P99:
+                return Comparator.comparingLong(PointStats::getP99RunTime);
+            case COUNT:
+                return Comparator.comparingLong(PointStats::getNrOfRuns);
+            case TOTAL: // fall through
+            default:
+                return Comparator.comparingLong(PointStats::getTotalRunTime);
+        }
+    }
+
+}
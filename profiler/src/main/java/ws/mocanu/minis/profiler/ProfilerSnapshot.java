@@ -0,0 +1,151 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A point-in-time copy of the statistics of all the code points of a profiler, in call tree order. Can be
+ * saved to a file and loaded back, e.g. for using it as a baseline in a {@link SnapshotComparison}.
+ */
+public class ProfilerSnapshot {
+
+    private static final String FILE_HEADER = "# Profiler snapshot v1: runs, totalRunTime, p50, p90, p99, max (ns), point";
+
+    private final long timestamp;
+    private final List<PointStats> points;
+    private final Map<String, PointStats> pointsByName;
+    private final Map<String, List<PointStats>> childrenByName;
+    private final Map<String, Long> selfRunTimes;
+
+    public ProfilerSnapshot(long timestamp, List<PointStats> points) {
+        this.timestamp = timestamp;
+        this.points = Collections.unmodifiableList(new ArrayList<>(points));
+        this.pointsByName = new LinkedHashMap<>();
+        this.childrenByName = new HashMap<>();
+        for (PointStats stats : points) {
+            pointsByName.put(stats.getPoint(), stats);
+            if (stats.getParentPoint() != null) {
+                childrenByName.computeIfAbsent(stats.getParentPoint(), parent -> new ArrayList<>()).add(stats);
+            }
+        }
+        this.selfRunTimes = new HashMap<>();
+        for (PointStats stats : points) {
+            long childrenRunTime = 0;
+            for (PointStats child : getChildren(stats.getPoint())) {
+                childrenRunTime += child.getTotalRunTime();
+            }
+            selfRunTimes.put(stats.getPoint(), Math.max(0, stats.getTotalRunTime() - childrenRunTime));
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the time when this snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the statistics of all the code points, parents before their children
+     */
+    public List<PointStats> getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the statistics of the given code point, or null if the point is not part of this snapshot
+     */
+    public PointStats getPoint(String point) {
+        return pointsByName.get(point);
+    }
+
+    /**
+     * @return the statistics of the direct children of the given code point, in call tree order
+     */
+    public List<PointStats> getChildren(String point) {
+        List<PointStats> children = childrenByName.get(point);
+        return children != null ? Collections.unmodifiableList(children) : Collections.emptyList();
+    }
+
+    /**
+     * Computes the time spent in a code point itself, outside of its child points. Children executed on
+     * other threads may overlap each other, in which case the self time is 0.
+     *
+     * @return the total run time of the point minus the total run time of its children, in nanoseconds
+     */
+    public long getSelfRunTime(PointStats stats) {
+        Long selfRunTime = selfRunTimes.get(stats.getPoint());
+        return selfRunTime != null ? selfRunTime : stats.getTotalRunTime();
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public void save(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println(FILE_HEADER);
+            out.println("timestamp\t" + timestamp);
+            for (PointStats stats : points) {
+                out.println(stats.getNrOfRuns() + "\t" + stats.getTotalRunTime() + "\t" + stats.getP50RunTime() + "\t"
+                            + stats.getP90RunTime() + "\t" + stats.getP99RunTime() + "\t" + stats.getMaxRunTime() + "\t"
+                            + stats.getPoint());
+            }
+        }
+    }
+
+    public static ProfilerSnapshot load(File file) throws IOException {
+        long timestamp = 0;
+        List<PointStats> points = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 7);
+                try {
+                    if (fields.length == 2 && "timestamp".equals(fields[0])) {
+                        timestamp = Long.parseLong(fields[1]);
+                    } else if (fields.length == 7) {
+                        points.add(new PointStats(fields[6], null, 0, Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                                                  Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                                                  Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+                    } else {
+                        throw new IOException("Invalid profiler snapshot line: " + line);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid profiler snapshot line: " + line, e);
+                }
+            }
+        }
+        return new ProfilerSnapshot(timestamp, points);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits used by a {@link SnapshotComparison} for deciding whether a code point regressed compared to
+ * a baseline. A percentage limit of 0 or less disables the corresponding check.
+ */
+public class RegressionThresholds {
+
+    private double maxMeanIncreasePercent = 20;
+    private double maxP50IncreasePercent = 20;
+    private double maxP99IncreasePercent = 50;
+    private double maxRunsChangePercent = 0;
+    private long minRuns = 10;
+    private long minIncreaseNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * @param percent the maximum increase of the mean run time, as percentage of the baseline's
+     */
+    public RegressionThresholds withMaxMeanIncreasePercent(double percent) {
+        this.maxMeanIncreasePercent = percent;
+        return this;
+    }
+
+    /**
+     * @param percent the maximum increase of the median run time, as percentage of the baseline's
+     */
+    public RegressionThresholds withMaxP50IncreasePercent(double percent) {
+        this.maxP50IncreasePercent = percent;
+        return this;
+    }
+
+    /**
+     * @param percent the maximum increase of the 99th percentile run time, as percentage of the baseline's
+     */
+    public RegressionThresholds withMaxP99IncreasePercent(double percent) {
+        this.maxP99IncreasePercent = percent;
+        return this;
+    }
+
+    /**
+     * @param percent the maximum change (up or down) of the number of runs, as percentage of the baseline's
+     */
+    public RegressionThresholds withMaxRunsChangePercent(double percent) {
+        this.maxRunsChangePercent = percent;
+        return this;
+    }
+
+    /**
+     * @param runs the minimum number of runs a point must have (both in the baseline and in the compared
+     *             snapshot) in order to be checked, since the statistics of a few runs are mostly noise
+     */
+    public RegressionThresholds withMinRuns(long runs) {
+        this.minRuns = runs;
+        return this;
+    }
+
+    /**
+     * @param millis the minimum absolute increase of a duration in order to be a regression, so that tiny
+     *               durations don't fail on percentage limits alone
+     */
+    public RegressionThresholds withMinIncreaseMillis(long millis) {
+        this.minIncreaseNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public double getMaxMeanIncreasePercent() {
+        return maxMeanIncreasePercent;
+    }
+
+    public double getMaxP50IncreasePercent() {
+        return maxP50IncreasePercent;
+    }
+
+    public double getMaxP99IncreasePercent() {
+        return maxP99IncreasePercent;
+    }
+
+    public double getMaxRunsChangePercent() {
+        return maxRunsChangePercent;
+    }
+
+    public long getMinRuns() {
+        return minRuns;
+    }
+
+    public long getMinIncreaseNanos() {
+        return minIncreaseNanos;
+    }
+
+}
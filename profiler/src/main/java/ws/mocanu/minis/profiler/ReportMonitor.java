@@ -1,61 +0,0 @@
-/*
-Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
-*/
-
-package ws.mocanu.minis.profiler;
-
-/**
- * A simple thread that monitors {@link Profiler}'s last execution timestamp and, when this timestamp gets
- * a bit old (e.g. 10 seconds) triggers the printing of the profiler's report.
- */
-public class ReportMonitor extends Thread {
-
-    private boolean keepRunning = true;
-
-    public void init() {
-        this.setDaemon(true);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            ReportMonitor.this.prepareToStop();
-            try {
-                ReportMonitor.this.join();
-            } catch (InterruptedException ignored) {
-                // ignored exception
-            }
-        }));
-    }
-
-    @Override
-    public void run() {
-        while (keepRunning) {
-            if (System.nanoTime() - Profiler.lets.getLastRecordedTimestamp() > 10000 * 1000000L) {
-                Profiler.lets.printReport();
-                Profiler.lets.resetLastRecordedTimestamp();
-            }
-
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        System.out.println("Shutting down the Profiler report publisher");
-        Profiler.lets.printReport();
-    }
-
-    private void prepareToStop() {
-        keepRunning = false;
-    }
-
-}
\ No newline at end of file
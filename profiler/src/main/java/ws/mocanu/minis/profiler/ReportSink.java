@@ -0,0 +1,39 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.List;
+
+/**
+ * A destination for the reports published by a {@link ScheduledReporter}. Sinks are wrapped into an
+ * {@link AsyncReportSink} by the profiler, so they may block or be slow without affecting the recording.
+ */
+public interface ReportSink {
+
+    /**
+     * Publishes a whole report.
+     *
+     * @param reportLines the formatted lines of the report
+     */
+    void publish(List<String> reportLines);
+
+    /**
+     * Releases any resources held by the sink. Called once, after the last report.
+     */
+    void close();
+
+}
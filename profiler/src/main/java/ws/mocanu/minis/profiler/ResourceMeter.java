@@ -0,0 +1,81 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the CPU time and the allocated bytes of the current thread, using the JVM's {@link ThreadMXBean}
+ * (and its {@code com.sun.management} extension for the allocated bytes). The measurements that are not
+ * supported by the running JVM are reported as {@link #UNSUPPORTED}.
+ */
+public class ResourceMeter {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean allocationBean;
+    private static final boolean cpuTimeSupported;
+
+    static {
+        boolean cpuTimeAvailable = false;
+        try {
+            if (threadBean.isCurrentThreadCpuTimeSupported()) {
+                threadBean.setThreadCpuTimeEnabled(true);
+                cpuTimeAvailable = true;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            System.err.println("Profiler cannot measure the thread CPU time: " + e.getMessage());
+        }
+        cpuTimeSupported = cpuTimeAvailable;
+
+        com.sun.management.ThreadMXBean allocationAvailable = null;
+        try {
+            if (threadBean instanceof com.sun.management.ThreadMXBean) {
+                allocationAvailable = (com.sun.management.ThreadMXBean) threadBean;
+                if (allocationAvailable.isThreadAllocatedMemorySupported()) {
+                    allocationAvailable.setThreadAllocatedMemoryEnabled(true);
+                } else {
+                    allocationAvailable = null;
+                }
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            System.err.println("Profiler cannot measure the thread allocated bytes: " + e.getMessage());
+            allocationAvailable = null;
+        }
+        allocationBean = allocationAvailable;
+    }
+
+    private ResourceMeter() {
+    }
+
+    /**
+     * @return the CPU time consumed so far by the current thread, in nanoseconds, or {@link #UNSUPPORTED}
+     */
+    public static long currentThreadCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : UNSUPPORTED;
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or {@link #UNSUPPORTED}
+     */
+    public static long currentThreadAllocatedBytes() {
+        return allocationBean != null ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : UNSUPPORTED;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A report sink that appends the reports to a file, rolling it over when it grows beyond a given size.
+ * Rolled files get a numeric suffix ({@code report.log.1}, {@code report.log.2}, ...), the highest number
+ * being the oldest, and only a given number of them is kept.
+ */
+public class RollingFileReportSink implements ReportSink {
+
+    private final File file;
+    private final long maxFileBytes;
+    private final int maxRolledFiles;
+
+    public RollingFileReportSink(File file, long maxFileBytes, int maxRolledFiles) {
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxRolledFiles = maxRolledFiles;
+    }
+
+    @Override
+    public void publish(List<String> reportLines) {
+        try {
+            if (file.length() >= maxFileBytes) {
+                rollOver();
+            }
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                                                                           StandardOpenOption.CREATE,
+                                                                           StandardOpenOption.APPEND))) {
+                out.println("Profiler report at " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()));
+                for (String line : reportLines) {
+                    out.println(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Profiler report file error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        // the file is closed after each report
+    }
+
+    private void rollOver() throws IOException {
+        File oldest = rolledFile(maxRolledFiles);
+        Files.deleteIfExists(oldest.toPath());
+        for (int index = maxRolledFiles - 1; index >= 1; index--) {
+            File rolled = rolledFile(index);
+            if (rolled.exists()) {
+                Files.move(rolled.toPath(), rolledFile(index + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxRolledFiles > 0) {
+            Files.move(file.toPath(), rolledFile(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private File rolledFile(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+/**
+ * The run counters that the records of the code points and the records of their tag sets have in common,
+ * so that both can be summed up into {@link PointStats}.
+ */
+interface RunRecord {
+
+    long getNrOfRuns();
+
+    long getTotalRunTime();
+
+    LatencyHistogram getHistogram();
+
+    long getNrOfFailures();
+
+    long getFailureRunTime();
+
+    /**
+     * @return the distribution of the durations of the successful executions
+     */
+    long[] getSuccessHistogramCounts();
+
+}
@@ -0,0 +1,158 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the report of a profiler to a set of {@link ReportSink}s: periodically (if configured), after
+ * the profiler becomes idle (no new executions for a while after some activity) and once more when the
+ * JVM shuts down. The idleness is detected by comparing the total number of runs between two checks, so
+ * the recording of executions does not need to write any shared timestamp.
+ */
+public class ScheduledReporter {
+
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private Profiler reportedProfiler;
+    private ScheduledExecutorService scheduler;
+    private volatile List<ReportSink> sinks = Collections.emptyList();
+    private volatile long idleReportNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile long periodicReportNanos = 0;
+
+    /**
+     * The state of the idleness detection, only touched by the scheduler thread.
+     */
+    private long lastTotalRuns = 0;
+    private long lastActivityTimestamp = System.nanoTime();
+    private boolean idleReportPending = false;
+    private long lastPeriodicReportTimestamp = System.nanoTime();
+
+    public void init(Profiler reportedProfiler) {
+        this.reportedProfiler = reportedProfiler;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Profiler reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(ScheduledReporter.this::prepareToStop));
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the scheduled checks, publishes a last report and closes the sinks.
+     */
+    public void prepareToStop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+            // ignored exception
+        }
+        if (reportedProfiler.getTotalRuns() > 0) {
+            publishReport();
+        }
+        for (ReportSink sink : sinks) {
+            sink.close();
+        }
+    }
+
+    /**
+     * Replaces the sinks of this reporter. The previous sinks are closed.
+     */
+    public void setSinks(List<ReportSink> newSinks) {
+        for (ReportSink sink : replaceSinks(newSinks)) {
+            sink.close();
+        }
+    }
+
+    /**
+     * Replaces the sinks of this reporter, leaving the closing of the previous sinks to the caller, e.g. for
+     * closing them outside of a lock, since closing a sink may wait for its pending reports.
+     *
+     * @return the previous sinks
+     */
+    public List<ReportSink> replaceSinks(List<ReportSink> newSinks) {
+        List<ReportSink> previousSinks = sinks;
+        sinks = Collections.unmodifiableList(new ArrayList<>(newSinks));
+        return previousSinks;
+    }
+
+    /**
+     * @param idleMillis   the time without new executions after which a report is published, or 0 for no
+     *                     reports on idleness
+     * @param periodMillis the interval between two periodic reports, or 0 for no periodic reports
+     */
+    public void setSchedule(long idleMillis, long periodMillis) {
+        this.idleReportNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.periodicReportNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    }
+
+    /**
+     * Formats the report of the profiler and hands it to all the sinks.
+     */
+    public void publishReport() {
+        List<String> reportLines = new ArrayList<>();
+        reportedProfiler.printReport((format, args) -> reportLines.add(String.format(format, args)));
+        for (ReportSink sink : sinks) {
+            if (sink instanceof AsyncReportSink && ((AsyncReportSink) sink).getDroppedReports() > 0) {
+                reportLines.add(String.format("Profiler| WARNING: %d reports were dropped by a slow report sink",
+                                              ((AsyncReportSink) sink).getDroppedReports()));
+            }
+        }
+        for (ReportSink sink : sinks) {
+            sink.publish(reportLines);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void check() {
+        try {
+            long currentTimestamp = System.nanoTime();
+            long totalRuns = reportedProfiler.getTotalRuns();
+            if (totalRuns != lastTotalRuns) {
+                lastTotalRuns = totalRuns;
+                lastActivityTimestamp = currentTimestamp;
+                idleReportPending = true;
+            }
+
+            if (periodicReportNanos > 0 && currentTimestamp - lastPeriodicReportTimestamp >= periodicReportNanos) {
+                lastPeriodicReportTimestamp = currentTimestamp;
+                publishReport();
+            } else if (idleReportPending && idleReportNanos > 0 && currentTimestamp - lastActivityTimestamp >= idleReportNanos) {
+                idleReportPending = false;
+                publishReport();
+            }
+
+            reportedProfiler.rollConcurrencyIntervals();
+            reportedProfiler.evictIdlePoints();
+        } catch (RuntimeException e) {
+            // an exception would cancel all the future checks
+            System.err.println("Profiler reporter error: " + e.getMessage());
+        }
+    }
+
+}
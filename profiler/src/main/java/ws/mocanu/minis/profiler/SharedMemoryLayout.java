@@ -0,0 +1,115 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+/**
+ * The layout of the memory-mapped file in which a {@link SharedMemoryPublisher} publishes the counters of
+ * a profiler, for external processes to read them with a {@link SharedMemoryReader}. All the numbers are
+ * big-endian. The file starts with a header:
+ *
+ * <pre>
+ * offset size
+ *   0     4   magic number (0x4D50534D, "MPSM")
+ *   4     4   layout version (2)
+ *   8     4   header size, in bytes
+ *  12     4   slot size, in bytes
+ *  16     4   slot capacity
+ *  20     4   number of slots used so far, retired ones included
+ *  24     8   number of publications so far
+ *  32     8   time of the last publication, in milliseconds since the epoch
+ *  40     4   number of histogram buckets per slot
+ *  44     4   maximum length of a point name, in bytes (UTF-8)
+ *  48     4   number of points that did not fit into the slots, at the last publication
+ *  52    12   reserved
+ * </pre>
+ *
+ * followed by one fixed-size slot for each code point. A point gets a slot the first time it is published.
+ * When the point is evicted from the profiler its slot is retired (depth 0), and may later be reused by
+ * another point, so a parent slot is not necessarily placed before its children:
+ *
+ * <pre>
+ * offset size
+ *   0     8   sequence number: odd while the slot is being written, incremented twice per update
+ *   8     4   index of the parent slot, or -1 for the points directly under root
+ *  12     4   depth in the call tree, starting with 1, or 0 for a retired slot
+ *  16     2   length of the point name, in bytes
+ *  18   256   point name (UTF-8), padded with zeros
+ * 280     8   runs
+ * 288     8   total run time (ns)
+ * 296     8   max run time (ns)
+ * 304     8   executions in flight (0 if concurrency tracking is disabled)
+ * 312     8   peak concurrency
+ * 320     8   measured runs (resource accounting)
+ * 328     8   measured run time (ns)
+ * 336     8   CPU time (ns)
+ * 344     8   allocated bytes
+ * 352   8*N   histogram bucket counts, see {@link LatencyHistogram}
+ * </pre>
+ *
+ * A reader gets a consistent copy of a slot (name and position included) by reading its sequence number
+ * before and after the copy, and retrying if the two differ or are odd.
+ */
+public class SharedMemoryLayout {
+
+    public static final int MAGIC = 0x4D50534D;
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 64;
+    public static final int HEADER_MAGIC = 0;
+    public static final int HEADER_VERSION = 4;
+    public static final int HEADER_HEADER_SIZE = 8;
+    public static final int HEADER_SLOT_SIZE = 12;
+    public static final int HEADER_SLOT_CAPACITY = 16;
+    public static final int HEADER_USED_SLOTS = 20;
+    public static final int HEADER_PUBLICATIONS = 24;
+    public static final int HEADER_LAST_PUBLICATION = 32;
+    public static final int HEADER_HISTOGRAM_BUCKETS = 40;
+    public static final int HEADER_MAX_NAME_BYTES = 44;
+    public static final int HEADER_SKIPPED_POINTS = 48;
+
+    public static final int MAX_NAME_BYTES = 256;
+
+    public static final int SLOT_SEQUENCE = 0;
+    public static final int SLOT_PARENT = 8;
+    public static final int SLOT_DEPTH = 12;
+    public static final int SLOT_NAME_LENGTH = 16;
+    public static final int SLOT_NAME = 18;
+    public static final int SLOT_RUNS = 280;
+    public static final int SLOT_TOTAL_RUN_TIME = 288;
+    public static final int SLOT_MAX_RUN_TIME = 296;
+    public static final int SLOT_IN_FLIGHT = 304;
+    public static final int SLOT_PEAK_CONCURRENCY = 312;
+    public static final int SLOT_MEASURED_RUNS = 320;
+    public static final int SLOT_MEASURED_RUN_TIME = 328;
+    public static final int SLOT_CPU_TIME = 336;
+    public static final int SLOT_ALLOCATED_BYTES = 344;
+    public static final int SLOT_HISTOGRAM = 352;
+
+    public static final int SLOT_SIZE = SLOT_HISTOGRAM + 8 * LatencyHistogram.BUCKET_COUNT;
+
+    private SharedMemoryLayout() {
+    }
+
+    public static long fileSize(int slotCapacity) {
+        return HEADER_SIZE + (long) slotCapacity * SLOT_SIZE;
+    }
+
+    public static int slotOffset(int slotIndex) {
+        return HEADER_SIZE + slotIndex * SLOT_SIZE;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static ws.mocanu.minis.profiler.SharedMemoryLayout.*;
+
+/**
+ * Periodically copies the counters of a profiler into a memory-mapped file with the layout described by
+ * {@link SharedMemoryLayout}, from where other processes can read them at any time with a
+ * {@link SharedMemoryReader}, without sending any request to the profiled JVM. The copy is done by this
+ * thread only, off the recording path; each code point gets a slot the first time it is published, and
+ * keeps it until it is evicted from the profiler, when the slot is retired and becomes free for new points.
+ */
+public class SharedMemoryPublisher extends Thread {
+
+    private Profiler publishedProfiler;
+    private volatile boolean keepRunning = true;
+    private long intervalMillis;
+    private int slotCapacity;
+    private MappedByteBuffer buffer;
+
+    /**
+     * The slots assigned to the code points, the retired slots that can be reused, and the number of slots
+     * used so far (the next never used slot).
+     */
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int usedSlots = 0;
+    private int skippedPoints = 0;
+    private long publications = 0;
+
+    public void init(File file, int slotCapacity, long intervalMillis, Profiler publishedProfiler) throws IOException {
+        this.setDaemon(true);
+        this.setName("Profiler shared memory publisher");
+        this.slotCapacity = slotCapacity;
+        this.intervalMillis = intervalMillis;
+        this.publishedProfiler = publishedProfiler;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long fileSize = SharedMemoryLayout.fileSize(slotCapacity);
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(fileSize);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_HEADER_SIZE, HEADER_SIZE);
+        buffer.putInt(HEADER_SLOT_SIZE, SLOT_SIZE);
+        buffer.putInt(HEADER_SLOT_CAPACITY, slotCapacity);
+        buffer.putInt(HEADER_USED_SLOTS, 0);
+        buffer.putInt(HEADER_HISTOGRAM_BUCKETS, LatencyHistogram.BUCKET_COUNT);
+        buffer.putInt(HEADER_MAX_NAME_BYTES, MAX_NAME_BYTES);
+        MemoryFences.fullFence();
+        // the magic number goes last, so readers never see a half-initialized header
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+    }
+
+    public void prepareToStop() {
+        keepRunning = false;
+    }
+
+    /**
+     * Stops publishing and waits for the thread to end, so that the file can be safely truncated after.
+     */
+    public void stopAndWait() throws InterruptedException {
+        prepareToStop();
+        interrupt();
+        join();
+    }
+
+    @Override
+    public void run() {
+        while (keepRunning) {
+            try {
+                publish();
+            } catch (RuntimeException e) {
+                System.err.println("Profiler shared memory error: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void publish() {
+        publications++;
+        skippedPoints = 0;
+        publishedProfiler.visitPoints((link, parentPoint, depth) -> {
+            Slot slot = slots.get(link.getPoint());
+            if (slot == null) {
+                slot = assignSlot(link.getPoint());
+                if (slot == null) {
+                    skippedPoints++;
+                    return;
+                }
+            }
+            int offset = SharedMemoryLayout.slotOffset(slot.index);
+            long sequence = beginSlotWrite(offset);
+            if (slot.record != link.getRecord()) {
+                // a new point, or a point that was evicted and registered again, maybe somewhere else
+                Slot parentSlot = parentPoint != null ? slots.get(parentPoint) : null;
+                writePosition(offset, link.getPoint(), parentSlot != null ? parentSlot.index : -1, depth);
+                slot.record = link.getRecord();
+            }
+            writeCounters(offset, slot.record);
+            endSlotWrite(offset, sequence);
+            slot.lastPublication = publications;
+        });
+        retireEvictedSlots();
+
+        buffer.putInt(HEADER_SKIPPED_POINTS, skippedPoints);
+        buffer.putLong(HEADER_LAST_PUBLICATION, System.currentTimeMillis());
+        buffer.putLong(HEADER_PUBLICATIONS, publications);
+    }
+
+    /**
+     * @return a free slot for the given point (a retired one if any), or null if all the slots are taken
+     */
+    private Slot assignSlot(String point) {
+        Integer index = freeSlots.poll();
+        if (index == null) {
+            if (usedSlots >= slotCapacity) {
+                return null;
+            }
+            index = usedSlots++;
+            MemoryFences.fullFence(); // the slot is still retired (all zeros) when readers start reading it
+            buffer.putInt(HEADER_USED_SLOTS, usedSlots);
+        }
+        Slot slot = new Slot(index);
+        slots.put(point, slot);
+        return slot;
+    }
+
+    /**
+     * Retires the slots of the points that were not seen by the last publication, i.e. that were evicted.
+     * Their slots are reused by new points only from the next publication on, once all their children
+     * (evicted together with them) are retired as well.
+     */
+    private void retireEvictedSlots() {
+        Iterator<Slot> iterator = slots.values().iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if (slot.lastPublication != publications) {
+                int offset = SharedMemoryLayout.slotOffset(slot.index);
+                long sequence = beginSlotWrite(offset);
+                writePosition(offset, "", -1, 0);
+                endSlotWrite(offset, sequence);
+                iterator.remove();
+                freeSlots.add(slot.index);
+            }
+        }
+    }
+
+    /**
+     * Makes the sequence of the slot odd, so that readers know the slot is being written.
+     *
+     * @return the sequence the slot had before
+     */
+    private long beginSlotWrite(int offset) {
+        long sequence = buffer.getLong(offset + SLOT_SEQUENCE);
+        buffer.putLong(offset + SLOT_SEQUENCE, sequence + 1);
+        MemoryFences.fullFence();
+        return sequence;
+    }
+
+    private void endSlotWrite(int offset, long sequence) {
+        MemoryFences.fullFence();
+        buffer.putLong(offset + SLOT_SEQUENCE, sequence + 2);
+    }
+
+    private void writePosition(int offset, String point, int parentSlot, int depth) {
+        byte[] name = point.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+        buffer.putInt(offset + SLOT_PARENT, parentSlot);
+        buffer.putInt(offset + SLOT_DEPTH, depth);
+        buffer.putShort(offset + SLOT_NAME_LENGTH, (short) nameLength);
+        for (int index = 0; index < nameLength; index++) {
+            buffer.put(offset + SLOT_NAME + index, name[index]);
+        }
+    }
+
+    private void writeCounters(int offset, ExecRecord record) {
+        LatencyHistogram histogram = record.getHistogram();
+        ConcurrencyGauge concurrency = record.getConcurrency();
+        buffer.putLong(offset + SLOT_RUNS, record.getNrOfRuns());
+        buffer.putLong(offset + SLOT_TOTAL_RUN_TIME, record.getTotalRunTime());
+        buffer.putLong(offset + SLOT_MAX_RUN_TIME, histogram.getMaxValue());
+        buffer.putLong(offset + SLOT_IN_FLIGHT, concurrency.getInFlight());
+        buffer.putLong(offset + SLOT_PEAK_CONCURRENCY, concurrency.getOverallPeak());
+        buffer.putLong(offset + SLOT_MEASURED_RUNS, record.getNrOfMeasuredRuns());
+        buffer.putLong(offset + SLOT_MEASURED_RUN_TIME, record.getMeasuredRunTime());
+        buffer.putLong(offset + SLOT_CPU_TIME, record.getTotalCpuTime());
+        buffer.putLong(offset + SLOT_ALLOCATED_BYTES, record.getTotalAllocatedBytes());
+        for (int index = 0; index < LatencyHistogram.BUCKET_COUNT; index++) {
+            buffer.putLong(offset + SLOT_HISTOGRAM + index * 8, histogram.getCount(index));
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * A slot assigned to a code point: the record last published into it, and the publication that last
+     * saw the point.
+     */
+    private static class Slot {
+
+        private final int index;
+        private ExecRecord record;
+        private long lastPublication;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ws.mocanu.minis.profiler.SharedMemoryLayout.*;
+
+/**
+ * Reads the counters published by a {@link SharedMemoryPublisher} from another process, by mapping the
+ * same file. Reading doesn't involve the profiled JVM in any way. Can also be used from the command line:
+ * <pre>
+ * java -cp profiler.jar ws.mocanu.minis.profiler.SharedMemoryReader &lt;file&gt; [&lt;refreshSeconds&gt;]
+ * </pre>
+ */
+public class SharedMemoryReader {
+
+    private static final int MAX_READ_ATTEMPTS = 100;
+
+    private final MappedByteBuffer buffer;
+    private final int slotCapacity;
+
+    public SharedMemoryReader(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException("Not a profiler shared memory file: " + file);
+        }
+        MemoryFences.fullFence(); // the header is read after the magic number
+        if (buffer.getInt(HEADER_VERSION) != VERSION || buffer.getInt(HEADER_SLOT_SIZE) != SLOT_SIZE
+            || buffer.getInt(HEADER_HISTOGRAM_BUCKETS) != LatencyHistogram.BUCKET_COUNT) {
+            throw new IOException("Unsupported profiler shared memory layout, version " + buffer.getInt(HEADER_VERSION));
+        }
+        slotCapacity = buffer.getInt(HEADER_SLOT_CAPACITY);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public long getPublications() {
+        return buffer.getLong(HEADER_PUBLICATIONS);
+    }
+
+    /**
+     * @return the time of the last publication, in milliseconds since the epoch
+     */
+    public long getLastPublicationMillis() {
+        return buffer.getLong(HEADER_LAST_PUBLICATION);
+    }
+
+    /**
+     * @return the number of code points that were not published because all the slots were taken
+     */
+    public int getSkippedPoints() {
+        return buffer.getInt(HEADER_SKIPPED_POINTS);
+    }
+
+    /**
+     * Reads the counters of all the published code points, parents before their children. The retired slots
+     * are skipped, and a point whose parent slot was retired in the meantime is listed as a top level point.
+     */
+    public ProfilerSnapshot readSnapshot() {
+        int usedSlots = Math.max(0, Math.min(buffer.getInt(HEADER_USED_SLOTS), slotCapacity));
+        MemoryFences.fullFence(); // the slots are read after the number of used slots
+        SlotContent[] contents = new SlotContent[usedSlots];
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        List<Integer> topLevelSlots = new ArrayList<>();
+        for (int slot = 0; slot < usedSlots; slot++) {
+            contents[slot] = readSlot(SharedMemoryLayout.slotOffset(slot));
+        }
+        for (int slot = 0; slot < usedSlots; slot++) {
+            if (contents[slot] == null) {
+                continue;
+            }
+            int parentSlot = contents[slot].parentSlot;
+            if (parentSlot >= 0 && parentSlot < usedSlots && parentSlot != slot && contents[parentSlot] != null) {
+                children.computeIfAbsent(parentSlot, key -> new ArrayList<>()).add(slot);
+            } else {
+                topLevelSlots.add(slot);
+            }
+        }
+
+        List<PointStats> points = new ArrayList<>(usedSlots);
+        for (int slot : topLevelSlots) {
+            addInTreeOrder(slot, null, contents, children, points);
+        }
+        return new ProfilerSnapshot(getLastPublicationMillis(), points);
+    }
+
+    private static void addInTreeOrder(int slot, String parentPoint, SlotContent[] contents,
+                                       Map<Integer, List<Integer>> children, List<PointStats> points) {
+        SlotContent content = contents[slot];
+        contents[slot] = null; // guards against parent cycles, left by slots reused while being read
+        points.add(content.toPointStats(parentPoint));
+        for (int child : children.getOrDefault(slot, Collections.emptyList())) {
+            if (contents[child] != null) {
+                addInTreeOrder(child, content.point, contents, children, points);
+            }
+        }
+    }
+
+    /**
+     * @return the content of the slot at the given offset, or null if the slot is retired or keeps changing
+     */
+    private SlotContent readSlot(int offset) {
+        long[] histogramCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long sequenceBefore = buffer.getLong(offset + SLOT_SEQUENCE);
+            if ((sequenceBefore & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            MemoryFences.fullFence(); // the slot is read after the sequence
+            int parentSlot = buffer.getInt(offset + SLOT_PARENT);
+            int depth = buffer.getInt(offset + SLOT_DEPTH);
+            byte[] name = new byte[Math.max(0, Math.min(buffer.getShort(offset + SLOT_NAME_LENGTH), MAX_NAME_BYTES))];
+            for (int index = 0; index < name.length; index++) {
+                name[index] = buffer.get(offset + SLOT_NAME + index);
+            }
+            long runs = buffer.getLong(offset + SLOT_RUNS);
+            long totalRunTime = buffer.getLong(offset + SLOT_TOTAL_RUN_TIME);
+            long maxRunTime = buffer.getLong(offset + SLOT_MAX_RUN_TIME);
+            for (int index = 0; index < histogramCounts.length; index++) {
+                histogramCounts[index] = buffer.getLong(offset + SLOT_HISTOGRAM + index * 8);
+            }
+            MemoryFences.fullFence(); // the slot is read before checking the sequence again
+            if (buffer.getLong(offset + SLOT_SEQUENCE) == sequenceBefore) {
+                if (depth <= 0) {
+                    return null; // never used, or retired
+                }
+                return new SlotContent(new String(name, StandardCharsets.UTF_8), parentSlot, depth, runs,
+                                       totalRunTime, maxRunTime, histogramCounts);
+            }
+        }
+        // the publisher keeps rewriting the slot (or died while writing it), skip it
+        return null;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * A consistent copy of a slot, before its parent point is resolved.
+     */
+    private static class SlotContent {
+
+        private final String point;
+        private final int parentSlot;
+        private final int depth;
+        private final long runs;
+        private final long totalRunTime;
+        private final long maxRunTime;
+        private final long[] histogramCounts;
+
+        private SlotContent(String point, int parentSlot, int depth, long runs, long totalRunTime, long maxRunTime,
+                            long[] histogramCounts) {
+            this.point = point;
+            this.parentSlot = parentSlot;
+            this.depth = depth;
+            this.runs = runs;
+            this.totalRunTime = totalRunTime;
+            this.maxRunTime = maxRunTime;
+            this.histogramCounts = histogramCounts;
+        }
+
+        private PointStats toPointStats(String parentPoint) {
+            return new PointStats(point, parentPoint, depth, runs, totalRunTime,
+                                  LatencyHistogram.getValueAtPercentile(histogramCounts, 50),
+                                  LatencyHistogram.getValueAtPercentile(histogramCounts, 90),
+                                  LatencyHistogram.getValueAtPercentile(histogramCounts, 99), maxRunTime);
+        }
+
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: SharedMemoryReader <file> [<refreshSeconds>]");
+            System.exit(1);
+        }
+
+        SharedMemoryReader reader = new SharedMemoryReader(new File(args[0]));
+        long refreshMillis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 0;
+        ReportPrinter printer = new StdoutReportPrinter();
+        do {
+            printer.printReportLine("Profiler| %d publications, last at %tF %<tT, %d points skipped",
+                                    reader.getPublications(), reader.getLastPublicationMillis(), reader.getSkippedPoints());
+            for (PointStats stats : reader.readSnapshot().getPoints()) {
+                int indent = Math.max(1, stats.getDepth() * 4 - 3);
+                printer.printReportLine("Profiler| %" + indent + "s %-" + (64 - indent) + "s| runs:%8d | avg: %10.3f ms | p50: %10.3f ms | p99: %10.3f ms | max: %10.3f ms",
+                                        " ", stats.getPoint(), stats.getNrOfRuns(), stats.getMeanRunTime() / 1000000.0,
+                                        stats.getP50RunTime() / 1000000.0, stats.getP99RunTime() / 1000000.0,
+                                        stats.getMaxRunTime() / 1000000.0); // nanos to millis
+            }
+            if (refreshMillis > 0) {
+                Thread.sleep(refreshMillis);
+            }
+        } while (refreshMillis > 0);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A captured slow execution of a code point, together with the timings of all the child executions that
+ * happened inside it. Allows finding out what a particular slow execution spent its time on.
+ */
+public class SlowExecution {
+
+    private final String point;
+    private final long duration;
+    private final long startTimeMillis;
+    private final String threadName;
+    private final long gcPauseTime;
+    private final List<SlowExecution> children;
+
+    public SlowExecution(String point, long duration, long gcPauseTime, long startTimeMillis, String threadName,
+                         List<SlowExecution> children) {
+        this.point = point;
+        this.duration = duration;
+        this.gcPauseTime = gcPauseTime;
+        this.startTimeMillis = startTimeMillis;
+        this.threadName = threadName;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    public String getPoint() {
+        return point;
+    }
+
+    /**
+     * @return the duration of this execution, in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the part of the duration of this execution spent in GC pauses, in nanoseconds (0 when the GC
+     *     pause correlation is disabled)
+     */
+    public long getGcPauseTime() {
+        return gcPauseTime;
+    }
+
+    /**
+     * @return the wall-clock time when this execution started, in milliseconds since the epoch
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * @return the name of the thread that ended this execution
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public List<SlowExecution> getChildren() {
+        return children;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A bounded collection of the slowest executions of a code point. Keeps at most a given number of
+ * {@link SlowExecution}s, dropping the fastest one when a slower execution comes in.
+ */
+public class SlowExecutions {
+
+    private final PriorityQueue<SlowExecution> executions =
+        new PriorityQueue<>((first, second) -> Long.compare(first.getDuration(), second.getDuration()));
+
+    /**
+     * The duration of the fastest captured execution, once the collection is full. Allows rejecting the
+     * executions that are not slow enough without taking the lock.
+     */
+    private volatile long admissionDuration = 0;
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Checks whether an execution of the given duration would be kept by this collection.
+     *
+     * @param duration the duration of the execution, in nanoseconds
+     * @return true if the execution is slow enough to be captured
+     */
+    public boolean accepts(long duration) {
+        return duration > admissionDuration;
+    }
+
+    public void add(SlowExecution execution, int maxExecutions) {
+        synchronized (executions) {
+            executions.add(execution);
+            while (executions.size() > maxExecutions) {
+                executions.poll();
+            }
+            admissionDuration = executions.size() >= maxExecutions ? executions.peek().getDuration() : 0;
+        }
+    }
+
+    public void reset() {
+        synchronized (executions) {
+            executions.clear();
+            admissionDuration = 0;
+        }
+    }
+
+    /**
+     * @return the captured executions, slowest first
+     */
+    public List<SlowExecution> getExecutions() {
+        List<SlowExecution> result;
+        synchronized (executions) {
+            result = new ArrayList<>(executions);
+        }
+        result.sort((first, second) -> Long.compare(second.getDuration(), first.getDuration()));
+        return result;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The comparison of a profiler snapshot against a baseline snapshot, point by point. Lists the regressions
+ * of the code points that exceed the given {@link RegressionThresholds}.
+ */
+public class SnapshotComparison {
+
+    private final ProfilerSnapshot baseline;
+    private final ProfilerSnapshot current;
+    private final RegressionThresholds thresholds;
+    private final List<String> regressions = new ArrayList<>();
+    private final List<String> missingPoints = new ArrayList<>();
+
+    public SnapshotComparison(ProfilerSnapshot baseline, ProfilerSnapshot current, RegressionThresholds thresholds) {
+        this.baseline = baseline;
+        this.current = current;
+        this.thresholds = thresholds;
+        compare();
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    public boolean hasRegressions() {
+        return !regressions.isEmpty();
+    }
+
+    /**
+     * @return one description for each regression found, e.g. {@code "X: p99 10.0 ms -> 30.0 ms (+200%)"}
+     */
+    public List<String> getRegressions() {
+        return regressions;
+    }
+
+    /**
+     * @return the points of the baseline that were not executed in the compared snapshot
+     */
+    public List<String> getMissingPoints() {
+        return missingPoints;
+    }
+
+    public void printReport(ReportPrinter printer) {
+        printer.printReportLine("Profiler| comparison against the baseline: %d regressions, %d missing points",
+                                regressions.size(), missingPoints.size());
+        for (String regression : regressions) {
+            printer.printReportLine("Profiler|     REGRESSION %s", regression);
+        }
+        for (String point : missingPoints) {
+            printer.printReportLine("Profiler|     MISSING    %s", point);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void compare() {
+        for (PointStats baselineStats : baseline.getPoints()) {
+            PointStats currentStats = current.getPoint(baselineStats.getPoint());
+            if (currentStats == null || currentStats.getNrOfRuns() == 0) {
+                missingPoints.add(baselineStats.getPoint());
+                continue;
+            }
+            if (baselineStats.getNrOfRuns() < thresholds.getMinRuns() || currentStats.getNrOfRuns() < thresholds.getMinRuns()) {
+                continue;
+            }
+
+            compareDuration(baselineStats.getPoint(), "mean", baselineStats.getMeanRunTime(), currentStats.getMeanRunTime(),
+                            thresholds.getMaxMeanIncreasePercent());
+            compareDuration(baselineStats.getPoint(), "p50", baselineStats.getP50RunTime(), currentStats.getP50RunTime(),
+                            thresholds.getMaxP50IncreasePercent());
+            compareDuration(baselineStats.getPoint(), "p99", baselineStats.getP99RunTime(), currentStats.getP99RunTime(),
+                            thresholds.getMaxP99IncreasePercent());
+
+            double maxRunsChange = thresholds.getMaxRunsChangePercent();
+            double runsChange = percentChange(baselineStats.getNrOfRuns(), currentStats.getNrOfRuns());
+            if (maxRunsChange > 0 && Math.abs(runsChange) > maxRunsChange) {
+                regressions.add(String.format("%s: runs %d -> %d (%+.0f%%)", baselineStats.getPoint(),
+                                              baselineStats.getNrOfRuns(), currentStats.getNrOfRuns(), runsChange));
+            }
+        }
+    }
+
+    private void compareDuration(String point, String statistic, long baselineValue, long currentValue, double maxIncreasePercent) {
+        double increase = percentChange(baselineValue, currentValue);
+        if (maxIncreasePercent > 0 && increase > maxIncreasePercent
+            && currentValue - baselineValue >= thresholds.getMinIncreaseNanos()) {
+            regressions.add(String.format("%s: %s %.1f ms -> %.1f ms (%+.0f%%)", point, statistic,
+                                          baselineValue / 1000000.0, currentValue / 1000000.0, increase)); // nanos to millis
+        }
+    }
+
+    private static double percentChange(long baselineValue, long currentValue) {
+        if (baselineValue == 0) {
+            return currentValue == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return (currentValue - baselineValue) * 100.0 / baselineValue;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the non-empty buckets of a {@link LatencyHistogram}: the bucket indexes (ascending)
+ * and their counts. The copies of the histograms that are kept between two pushes or shipped to another
+ * process use this form, since most code points only ever fill a few dozen of the
+ * {@link LatencyHistogram#BUCKET_COUNT} buckets.
+ */
+final class SparseHistogram {
+
+    static final SparseHistogram EMPTY = new SparseHistogram(new int[0], new long[0]);
+
+    private final int[] buckets;
+    private final long[] counts;
+
+    /**
+     * @param buckets the indexes of the non-empty buckets, ascending; the array is kept as is
+     * @param counts  the counts of the buckets; the array is kept as is
+     */
+    SparseHistogram(int[] buckets, long[] counts) {
+        this.buckets = buckets;
+        this.counts = counts;
+    }
+
+    /**
+     * @param bucketCounts the counts of all the buckets, as returned by {@link LatencyHistogram#getCounts()}
+     */
+    static SparseHistogram of(long[] bucketCounts) {
+        int size = 0;
+        for (long count : bucketCounts) {
+            if (count != 0) {
+                size++;
+            }
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        int[] buckets = new int[size];
+        long[] counts = new long[size];
+        int position = 0;
+        for (int index = 0; index < bucketCounts.length; index++) {
+            if (bucketCounts[index] != 0) {
+                buckets[position] = index;
+                counts[position] = bucketCounts[index];
+                position++;
+            }
+        }
+        return new SparseHistogram(buckets, counts);
+    }
+
+    /**
+     * Computes the bucket by bucket difference between this histogram and an older copy of the same one.
+     * Buckets that shrunk (e.g. after a reset) count as empty.
+     */
+    SparseHistogram minus(SparseHistogram previous) {
+        int[] deltaBuckets = new int[buckets.length];
+        long[] deltaCounts = new long[buckets.length];
+        int size = 0;
+        int previousPosition = 0;
+        for (int position = 0; position < buckets.length; position++) {
+            while (previousPosition < previous.buckets.length && previous.buckets[previousPosition] < buckets[position]) {
+                previousPosition++;
+            }
+            long previousCount = 0;
+            if (previousPosition < previous.buckets.length && previous.buckets[previousPosition] == buckets[position]) {
+                previousCount = previous.counts[previousPosition];
+            }
+            if (counts[position] > previousCount) {
+                deltaBuckets[size] = buckets[position];
+                deltaCounts[size] = counts[position] - previousCount;
+                size++;
+            }
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new SparseHistogram(Arrays.copyOf(deltaBuckets, size), Arrays.copyOf(deltaCounts, size));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of non-empty buckets
+     */
+    int size() {
+        return buckets.length;
+    }
+
+    int getBucket(int position) {
+        return buckets[position];
+    }
+
+    long getCount(int position) {
+        return counts[position];
+    }
+
+    /**
+     * @return the counts of all the buckets, indexed like the ones of {@link LatencyHistogram#getCounts()}
+     */
+    long[] toCounts() {
+        long[] bucketCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int position = 0; position < buckets.length; position++) {
+            bucketCounts[buckets[position]] = counts[position];
+        }
+        return bucketCounts;
+    }
+
+    /**
+     * @return the middle of the bucket holding the given percentile, or 0 if there are no counts, like
+     *     {@link LatencyHistogram#getValueAtPercentile(long[], double)}
+     */
+    long getValueAtPercentile(double percentile) {
+        long totalCount = 0;
+        for (long count : counts) {
+            totalCount += count;
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long targetCount = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulatedCount = 0;
+        for (int position = 0; position < buckets.length; position++) {
+            cumulatedCount += counts[position];
+            if (cumulatedCount >= targetCount) {
+                return (LatencyHistogram.bucketLowerBound(buckets[position]) + LatencyHistogram.bucketUpperBound(buckets[position])) / 2;
+            }
+        }
+        return LatencyHistogram.bucketUpperBound(buckets[buckets.length - 1]);
+    }
+
+}
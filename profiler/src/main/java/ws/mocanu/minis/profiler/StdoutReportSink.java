@@ -0,0 +1,41 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.List;
+
+/**
+ * A report sink that prints to STDOUT.
+ */
+public class StdoutReportSink implements ReportSink {
+
+    @Override
+    public void publish(List<String> reportLines) {
+        StringBuilder report = new StringBuilder();
+        for (String line : reportLines) {
+            report.append(line).append(System.lineSeparator());
+        }
+        System.out.print(report);
+        System.out.flush();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+}
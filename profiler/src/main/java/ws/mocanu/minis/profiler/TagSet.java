@@ -0,0 +1,149 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A small set of tag keys and values (e.g. {@code endpoint=/users, tier=gold}) qualifying the executions of
+ * a code point, so that dimensions don't need to be encoded into the point names. The tag sets are interned:
+ * each distinct set exists only once, and is meant to be created once (e.g. as a constant) and then passed to
+ * {@link Profiler#start(String, TagSet)}, which then allocates nothing for it.
+ * <pre>
+ * private static final TagSet GOLD_USERS = TagSet.of("endpoint", "/users", "tier", "gold");
+ * ...
+ * try (Trace trace = Profiler.lets.start("RequestController.handleRequest", GOLD_USERS)) {
+ * </pre>
+ * The tags are meant for low cardinality dimensions: after {@link #MAX_TAG_SETS} distinct sets, the new ones
+ * are all replaced by {@link #OVERFLOW}.
+ */
+public final class TagSet {
+
+    public static final int MAX_TAG_SETS = 1000;
+
+    public static final TagSet OVERFLOW = new TagSet("overflow=true", Collections.singletonMap("overflow", "true"));
+
+    /**
+     * The interned tag sets, by canonical form; {@link #OVERFLOW} is interned as well, so that creating its
+     * tags explicitly returns it rather than a lookalike.
+     */
+    private static final Map<String, TagSet> tagSets = new ConcurrentHashMap<>();
+
+    static {
+        tagSets.put(OVERFLOW.canonicalForm, OVERFLOW);
+    }
+
+    /**
+     * The tags in canonical form: the pairs sorted by key, as {@code key=value} separated by commas.
+     */
+    private final String canonicalForm;
+    private final Map<String, String> tags;
+
+    private TagSet(String canonicalForm, Map<String, String> tags) {
+        this.canonicalForm = canonicalForm;
+        this.tags = tags;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param keysAndValues the keys and values of the tags, alternating; neither can be empty nor contain
+     *                      any of the characters {@code , = { }}
+     * @return the interned tag set
+     */
+    public static TagSet of(String... keysAndValues) {
+        if (keysAndValues.length == 0 || keysAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("A tag set needs pairs of keys and values, got " + keysAndValues.length + " strings");
+        }
+        Map<String, String> tags = new TreeMap<>();
+        for (int index = 0; index < keysAndValues.length; index += 2) {
+            String key = checkTagPart(keysAndValues[index]);
+            String value = checkTagPart(keysAndValues[index + 1]);
+            if (tags.put(key, value) != null) {
+                throw new IllegalArgumentException("Duplicate tag key: " + key);
+            }
+        }
+
+        StringBuilder canonicalForm = new StringBuilder();
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            canonicalForm.append(canonicalForm.length() == 0 ? "" : ",").append(tag.getKey()).append('=').append(tag.getValue());
+        }
+        TagSet tagSet = tagSets.get(canonicalForm.toString());
+        if (tagSet != null) {
+            return tagSet;
+        }
+        if (tagSets.size() > MAX_TAG_SETS) { // OVERFLOW is not counted
+            return OVERFLOW;
+        }
+        return tagSets.computeIfAbsent(canonicalForm.toString(), form -> new TagSet(form, Collections.unmodifiableMap(tags)));
+    }
+
+    /**
+     * Parses a tag set from its canonical form, as returned by {@link #toString()}.
+     */
+    public static TagSet parse(String canonicalForm) {
+        String[] tags = canonicalForm.split(",");
+        String[] keysAndValues = new String[tags.length * 2];
+        for (int index = 0; index < tags.length; index++) {
+            int separator = tags[index].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid tag set: " + canonicalForm);
+            }
+            keysAndValues[index * 2] = tags[index].substring(0, separator);
+            keysAndValues[index * 2 + 1] = tags[index].substring(separator + 1);
+        }
+        return of(keysAndValues);
+    }
+
+    /**
+     * @return the value of the given tag, or null if this set has no such tag
+     */
+    public String get(String key) {
+        return tags.get(key);
+    }
+
+    /**
+     * @return the tags, sorted by key
+     */
+    public Map<String, String> asMap() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return canonicalForm;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static String checkTagPart(String part) {
+        if (part == null || part.isEmpty()) {
+            throw new IllegalArgumentException("The tag keys and values must not be empty");
+        }
+        for (int index = 0; index < part.length(); index++) {
+            char character = part.charAt(index);
+            if (character == ',' || character == '=' || character == '{' || character == '}') {
+                throw new IllegalArgumentException("Invalid character '" + character + "' in tag: " + part);
+            }
+        }
+        return part;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The record of the executions of a code point for one of its tag sets (see {@link TagSet}). Only keeps
+ * what the tag views read, the runs, the failures and their durations, so that a point with many tag sets
+ * doesn't cost many full {@link ExecRecord}s.
+ */
+class TaggedRecord implements RunRecord {
+
+    private final LongAdder nrOfRuns = new LongAdder();
+    private final LongAdder totalRunTime = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder nrOfFailures = new LongAdder();
+    private final LongAdder failureRunTime = new LongAdder();
+
+    /**
+     * The distribution of the durations of the failed executions, created on the first failure.
+     */
+    private volatile LatencyHistogram failureHistogram;
+
+    // ----------------------------------------------------------------------------------------------------
+
+    void recordExecution(long executionTime, boolean failed) {
+        nrOfRuns.increment();
+        totalRunTime.add(executionTime);
+        histogram.record(executionTime);
+        if (failed) {
+            nrOfFailures.increment();
+            failureRunTime.add(executionTime);
+            getOrCreateFailureHistogram().record(executionTime);
+        }
+    }
+
+    /**
+     * Adds the run and failure counters of the given counters (usually coming from another profiler).
+     */
+    void merge(ExecCounters counters) {
+        nrOfRuns.add(counters.getNrOfRuns());
+        totalRunTime.add(counters.getTotalRunTime());
+        histogram.add(counters.getHistogram(), counters.getMaxRunTime());
+        if (counters.getNrOfFailures() > 0) {
+            nrOfFailures.add(counters.getNrOfFailures());
+            failureRunTime.add(counters.getFailureRunTime());
+            getOrCreateFailureHistogram().add(counters.getFailureHistogram(), counters.getMaxFailureRunTime());
+        }
+    }
+
+    void reset() {
+        nrOfRuns.reset();
+        totalRunTime.reset();
+        histogram.reset();
+        nrOfFailures.reset();
+        failureRunTime.reset();
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram != null) {
+            currentFailureHistogram.reset();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    @Override
+    public long getNrOfRuns() {
+        return nrOfRuns.longValue();
+    }
+
+    @Override
+    public long getTotalRunTime() {
+        return totalRunTime.longValue();
+    }
+
+    @Override
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public long getNrOfFailures() {
+        return nrOfFailures.longValue();
+    }
+
+    @Override
+    public long getFailureRunTime() {
+        return failureRunTime.longValue();
+    }
+
+    /**
+     * @return the distribution of the durations of the failed executions, or null if none failed yet
+     */
+    LatencyHistogram getFailureHistogram() {
+        return failureHistogram;
+    }
+
+    long getMaxFailureRunTime() {
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        return currentFailureHistogram != null ? currentFailureHistogram.getMaxValue() : 0;
+    }
+
+    @Override
+    public long[] getSuccessHistogramCounts() {
+        long[] counts = histogram.getCounts();
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram != null) {
+            long[] failureCounts = currentFailureHistogram.getCounts();
+            for (int index = 0; index < counts.length; index++) {
+                counts[index] = Math.max(0, counts[index] - failureCounts[index]);
+            }
+        }
+        return counts;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private LatencyHistogram getOrCreateFailureHistogram() {
+        LatencyHistogram currentFailureHistogram = failureHistogram;
+        if (currentFailureHistogram == null) {
+            synchronized (this) {
+                currentFailureHistogram = failureHistogram;
+                if (currentFailureHistogram == null) {
+                    currentFailureHistogram = new LatencyHistogram();
+                    failureHistogram = currentFailureHistogram;
+                }
+            }
+        }
+        return currentFailureHistogram;
+    }
+
+}
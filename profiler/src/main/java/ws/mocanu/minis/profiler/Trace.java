@@ -16,18 +16,65 @@ limitations under the License.
 
 package ws.mocanu.minis.profiler;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * An execution trace maps the details of a particular code execution. Such traces are stored in a
  * {@link ThreadLocal} to allow for trace aggregation and "stack" unwinding.
  */
 public class Trace implements AutoCloseable {
 
+    private final Profiler profiler;
     private final String point;
     private final long startTimestamp;
     private final Trace parent;
     private final ExecLink link;
 
-    Trace(String point, long startTimestamp, Trace parent, ExecLink link) {
+    /**
+     * The details below are only filled in when the slow executions capture is enabled, so that a slow
+     * execution can be reported together with its child executions.
+     */
+    private long endTimestamp;
+    private String threadName;
+    private List<Trace> endedChildren;
+
+    /**
+     * The CPU time and allocated bytes of the starting thread, when the resource accounting is enabled.
+     * Only meaningful if the trace is ended on the same thread.
+     */
+    private Thread startThread;
+    private long startCpuTime;
+    private long startAllocatedBytes;
+
+    /**
+     * The concurrency level of the trace's code point when the trace started, or 0 if the concurrency
+     * tracking was disabled.
+     */
+    private long concurrencyLevel;
+
+    /**
+     * The outcome of the traced execution: whether it failed, its custom status (if any) and the type of the
+     * exception that made it fail (if any). An execution with no outcome set is a plain success.
+     */
+    private boolean failed;
+    private String status;
+    private String exceptionType;
+
+    /**
+     * The tags of the traced execution, or null if it has none.
+     */
+    private TagSet tags;
+
+    /**
+     * The time (in nanoseconds) the traced execution spent in GC pauses, when the GC pause correlation is
+     * enabled.
+     */
+    private long gcPauseTime;
+
+    Trace(Profiler profiler, String point, long startTimestamp, Trace parent, ExecLink link) {
+        this.profiler = profiler;
         this.point = point;
         this.startTimestamp = startTimestamp;
         this.parent = parent;
@@ -50,9 +97,140 @@ public class Trace implements AutoCloseable {
         return link;
     }
 
+    ExecRecord getRecord() {
+        return link.getRecord();
+    }
+
+    long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    Thread getStartThread() {
+        return startThread;
+    }
+
+    long getStartCpuTime() {
+        return startCpuTime;
+    }
+
+    long getStartAllocatedBytes() {
+        return startAllocatedBytes;
+    }
+
+    void markResourcesStart(Thread startThread, long startCpuTime, long startAllocatedBytes) {
+        this.startThread = startThread;
+        this.startCpuTime = startCpuTime;
+        this.startAllocatedBytes = startAllocatedBytes;
+    }
+
+    long getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    void setConcurrencyLevel(long concurrencyLevel) {
+        this.concurrencyLevel = concurrencyLevel;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    String getExceptionType() {
+        return exceptionType;
+    }
+
+    /**
+     * Marks the traced execution as failed. Must be called before the trace is closed; note that with a
+     * try-with-resources block, the catch clauses run after the trace was already closed, so a thrown
+     * exception is better recorded with {@link Profiler#time(String, java.util.concurrent.Callable)}.
+     */
+    public void fail() {
+        this.failed = true;
+    }
+
+    /**
+     * Marks the traced execution as failed because of the given exception, whose type is counted by the
+     * code point's record.
+     */
+    public void fail(Throwable cause) {
+        this.failed = true;
+        this.exceptionType = cause.getClass().getName();
+    }
+
+    /**
+     * Marks the traced execution as failed, with a custom status (e.g. "timeout" or "rejected").
+     */
+    public void fail(String status) {
+        this.failed = true;
+        this.status = status;
+    }
+
+    /**
+     * Sets a custom status on the traced execution, without marking it as failed (e.g. "cache-hit").
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    TagSet getTags() {
+        return tags;
+    }
+
+    void setTags(TagSet tags) {
+        this.tags = tags;
+    }
+
+    long getGcPauseTime() {
+        return gcPauseTime;
+    }
+
+    void setGcPauseTime(long gcPauseTime) {
+        this.gcPauseTime = gcPauseTime;
+    }
+
+    void markEnded(long endTimestamp, String threadName) {
+        this.endTimestamp = endTimestamp;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Adds an ended child trace to this trace. Children may end on other threads (e.g. when timing a
+     * {@link java.util.concurrent.Callable}), hence the synchronization.
+     */
+    void addEndedChild(Trace child) {
+        synchronized (this) {
+            if (endedChildren == null) {
+                endedChildren = new ArrayList<>();
+            }
+            if (endedChildren.size() < MAX_ENDED_CHILDREN) {
+                endedChildren.add(child);
+            }
+        }
+    }
+
+    List<Trace> getEndedChildren() {
+        synchronized (this) {
+            return endedChildren == null ? Collections.emptyList() : new ArrayList<>(endedChildren);
+        }
+    }
+
     @Override
     public void close() {
-        Profiler.lets.end(this);
+        profiler.end(this);
     }
 
+    /**
+     * The maximum number of child traces kept for a single trace, so that a trace with a huge number of
+     * child executions doesn't hold onto all of them.
+     */
+    private static final int MAX_ENDED_CHILDREN = 256;
+
 }
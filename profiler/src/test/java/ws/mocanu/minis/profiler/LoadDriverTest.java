@@ -0,0 +1,99 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadDriverTest {
+
+    private static final long STALL_MILLIS = 200;
+
+    @Test
+    public void latencyIncludesTheTimeWaitedBehindAStall() throws InterruptedException {
+        Profiler profiler = new Profiler(false);
+        AtomicInteger calls = new AtomicInteger();
+        LoadResult result = new LoadDriver("Load.call", () -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(STALL_MILLIS); // the calls issued meanwhile queue up behind this one
+            }
+        }).profiler(profiler).openLoop(100, 1).duration(STALL_MILLIS * 2).run();
+
+        long stallNanos = TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS);
+        assertTrue(result.getNrOfCalls() > 20);
+        assertEquals(result.getNrOfCalls(), calls.get());
+        // about half of the calls waited behind the stall, but only the first one took long to run
+        assertTrue(result.getLatencyAtPercentile(75) > stallNanos / 4);
+        assertTrue(result.getServiceTimeAtPercentile(90) < stallNanos / 2);
+        assertTrue(result.getLatency().getMaxValue() >= stallNanos);
+
+        PointStats stats = profiler.snapshot().getPoint("Load.call");
+        assertEquals(result.getNrOfCalls(), stats.getNrOfRuns());
+        assertTrue(stats.getP90RunTime() > stallNanos / 2);
+    }
+
+    @Test
+    public void warmupCallsAreNotRecorded() throws InterruptedException {
+        Profiler profiler = new Profiler(false);
+        AtomicInteger calls = new AtomicInteger();
+        LoadResult result = new LoadDriver("Load.call", calls::incrementAndGet)
+            .profiler(profiler).closedLoop(2, 200).warmup(100).duration(100).run();
+
+        assertTrue(result.getNrOfCalls() > 0);
+        assertTrue(calls.get() > result.getNrOfCalls());
+        assertEquals(result.getNrOfCalls(), profiler.snapshot().getPoint("Load.call").getNrOfRuns());
+    }
+
+    @Test
+    public void ratesAboveOneCallPerNanosecondAreRejected() {
+        LoadDriver driver = new LoadDriver("Load.call", () -> {
+            // nothing to do
+        });
+        for (double rate : new double[] {2e9, Double.POSITIVE_INFINITY, Double.NaN, -1}) {
+            try {
+                driver.openLoop(rate, 1);
+                fail("The rate " + rate + " should have been rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                driver.closedLoop(1, rate);
+                fail("The rate " + rate + " should have been rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        driver.openLoop(LoadDriver.MAX_RATE_PER_SECOND, 1);
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PointNameTrieTest {
+
+    @Test
+    public void rollupsCountOnlyTheEntriesIntoAPrefix() {
+        Profiler profiler = new Profiler(false);
+        for (int index = 0; index < 2; index++) {
+            try (Trace ignored = profiler.start("Svc.handle")) {
+                try (Trace ignored2 = profiler.start("Svc.validate")) {
+                    // nothing to do
+                }
+                try (Trace ignored2 = profiler.start("Repo.query")) {
+                    try (Trace ignored3 = profiler.start("mapRow")) {
+                        try (Trace ignored4 = profiler.start("Svc.helper")) {
+                            // nothing to do
+                        }
+                    }
+                }
+            }
+        }
+        try (Trace ignored = profiler.start("Svc.helper.cached")) {
+            // nothing to do
+        }
+
+        ProfilerSnapshot rollups = profiler.snapshotRollups();
+        // Svc.validate and Svc.helper are nested under Svc.handle, directly or not
+        assertEquals(3, rollups.getPoint("Svc").getNrOfRuns());
+        assertEquals(2, rollups.getPoint("Repo").getNrOfRuns());
+        assertEquals(1, rollups.getPoint("Svc.helper").getNrOfRuns());
+        assertEquals("Svc", rollups.getPoint("Svc.helper").getParentPoint());
+        assertNull(rollups.getPoint("mapRow"));
+    }
+
+    @Test
+    public void evictedPointsLeaveTheRollups() throws InterruptedException {
+        Profiler profiler = new Profiler(false);
+        profiler.setPointIdleEviction(10);
+        try (Trace ignored = profiler.start("Svc.handle")) {
+            try (Trace ignored2 = profiler.start("Repo.query")) {
+                // nothing to do
+            }
+        }
+        profiler.evictIdlePoints();
+        Thread.sleep(50);
+        assertEquals(2, profiler.evictIdlePoints());
+        assertEquals(0, profiler.snapshotRollups().getPoints().size());
+
+        // registered again, the nested point is now an entry into its prefix
+        try (Trace ignored = profiler.start("Repo.query")) {
+            try (Trace ignored2 = profiler.start("Svc.handle")) {
+                // nothing to do
+            }
+        }
+        ProfilerSnapshot rollups = profiler.snapshotRollups();
+        assertEquals(1, rollups.getPoint("Repo").getNrOfRuns());
+        assertEquals(1, rollups.getPoint("Svc").getNrOfRuns());
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static ws.mocanu.minis.profiler.ProfilerAssertions.assertNoRegressions;
+import static ws.mocanu.minis.profiler.ProfilerAssertions.assertThat;
+import static ws.mocanu.minis.profiler.ProfilerAssertions.point;
+
+public class ProfilerAssertionsTest {
+
+    @Test
+    public void pointAssertionsPassWithinTheLimits() {
+        Profiler profiler = new Profiler(false);
+        for (int index = 0; index < 3; index++) {
+            try (Trace ignored = profiler.start("Assertions.point")) {
+                // nothing to do
+            }
+        }
+
+        assertThat(point(profiler, "Assertions.point")).wasExecuted().runsAtLeast(3)
+                                                       .meanBelow(10000).p50Below(10000).p90Below(10000)
+                                                       .p99Below(10000).maxBelow(10000);
+    }
+
+    @Test
+    public void pointAssertionsFailOutsideTheLimits() {
+        Profiler profiler = new Profiler(false);
+        PointStats stats = stats("Assertions.slow", 10, 20);
+
+        assertFailure("expected at least 1 runs, but got 0", () -> assertThat(point(profiler, "Assertions.missing")).wasExecuted());
+        assertFailure("expected at least 11 runs, but got 10", () -> assertThat(stats).runsAtLeast(11));
+        assertFailure("expected p99 below 20 ms", () -> assertThat(stats).p99Below(20));
+        assertFailure("expected mean below 5 ms", () -> assertThat(stats).p50Below(30).meanBelow(5));
+    }
+
+    @Test
+    public void noRegressionsWithinTheThresholds() {
+        ProfilerSnapshot baseline = snapshot(stats("Assertions.point", 100, 10));
+        ProfilerSnapshot current = snapshot(stats("Assertions.point", 100, 11));
+
+        SnapshotComparison comparison = new SnapshotComparison(baseline, current, new RegressionThresholds());
+        assertFalse(comparison.hasRegressions());
+        assertTrue(comparison.getMissingPoints().isEmpty());
+        assertNoRegressions(baseline, current, new RegressionThresholds());
+    }
+
+    @Test
+    public void regressionsBeyondTheThresholds() {
+        ProfilerSnapshot baseline = snapshot(stats("Assertions.point", 100, 10));
+        ProfilerSnapshot current = snapshot(stats("Assertions.point", 100, 30));
+
+        SnapshotComparison comparison = new SnapshotComparison(baseline, current, new RegressionThresholds());
+        assertEquals(Arrays.asList("Assertions.point: mean 10.0 ms -> 30.0 ms (+200%)",
+                                   "Assertions.point: p50 10.0 ms -> 30.0 ms (+200%)",
+                                   "Assertions.point: p99 10.0 ms -> 30.0 ms (+200%)"),
+                     comparison.getRegressions());
+        assertFailure("Performance regressions found:\n    Assertions.point: mean",
+                      () -> assertNoRegressions(baseline, current, new RegressionThresholds()));
+
+        // the same slowdown passes once the limits allow it
+        assertNoRegressions(baseline, current, new RegressionThresholds().withMaxMeanIncreasePercent(250)
+                                                                         .withMaxP50IncreasePercent(250)
+                                                                         .withMaxP99IncreasePercent(0));
+    }
+
+    @Test
+    public void thresholdsSkipNoisyPoints() {
+        ProfilerSnapshot baseline = snapshot(stats("Assertions.rare", 5, 10), stats("Assertions.fast", 100, 0));
+        ProfilerSnapshot current = snapshot(stats("Assertions.rare", 5, 30), stats("Assertions.fast", 100, 0, 900000));
+
+        // too few runs, and an increase below the absolute minimum
+        assertFalse(new SnapshotComparison(baseline, current, new RegressionThresholds()).hasRegressions());
+
+        SnapshotComparison strict = new SnapshotComparison(baseline, current, new RegressionThresholds().withMinRuns(1)
+                                                                                                      .withMinIncreaseMillis(0));
+        assertEquals(6, strict.getRegressions().size());
+        assertTrue(strict.getRegressions().get(0).startsWith("Assertions.rare: mean"));
+        assertTrue(strict.getRegressions().get(3).startsWith("Assertions.fast: mean"));
+    }
+
+    @Test
+    public void runsChangesAndMissingPoints() {
+        ProfilerSnapshot baseline = snapshot(stats("Assertions.point", 100, 10), stats("Assertions.gone", 100, 10));
+        ProfilerSnapshot current = snapshot(stats("Assertions.point", 40, 10));
+
+        SnapshotComparison comparison = new SnapshotComparison(baseline, current, new RegressionThresholds());
+        assertFalse(comparison.hasRegressions());
+        assertEquals(Arrays.asList("Assertions.gone"), comparison.getMissingPoints());
+
+        comparison = new SnapshotComparison(baseline, current, new RegressionThresholds().withMaxRunsChangePercent(50));
+        assertEquals(Arrays.asList("Assertions.point: runs 100 -> 40 (-60%)"), comparison.getRegressions());
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the statistics of a point whose executions all took the given number of milliseconds
+     */
+    private static PointStats stats(String point, long runs, long millis) {
+        return stats(point, runs, millis, 0);
+    }
+
+    private static PointStats stats(String point, long runs, long millis, long extraNanos) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis) + extraNanos;
+        return new PointStats(point, null, 1, runs, runs * nanos, nanos, nanos, nanos, nanos);
+    }
+
+    private static ProfilerSnapshot snapshot(PointStats... points) {
+        return new ProfilerSnapshot(System.currentTimeMillis(), Arrays.asList(points));
+    }
+
+    private static void assertFailure(String expectedMessage, Runnable assertion) {
+        try {
+            assertion.run();
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+            return;
+        }
+        throw new AssertionError("The assertion should have failed with: " + expectedMessage);
+    }
+
+}
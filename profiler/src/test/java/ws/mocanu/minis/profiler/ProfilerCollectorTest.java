@@ -0,0 +1,237 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfilerCollectorTest {
+
+    private static final long WAIT_MILLIS = 10000;
+
+    private ProfilerExporter exporter;
+    private ProfilerCollector collector;
+
+    @After
+    public void stopThreads() throws InterruptedException {
+        if (exporter != null) {
+            exporter.prepareToStop();
+            exporter.interrupt();
+            exporter.join(WAIT_MILLIS);
+        }
+        if (collector != null) {
+            collector.prepareToStop();
+        }
+    }
+
+    @Test
+    public void collectorMergesTheDeltasPushedOverLoopback() throws Exception {
+        int port = findFreePort();
+        Profiler mergedProfiler = new Profiler(false);
+        collector = new ProfilerCollector();
+        collector.init(port, mergedProfiler);
+        collector.start();
+
+        Profiler exportedProfiler = new Profiler(false);
+        TagSet gold = TagSet.of("tier", "gold");
+        for (int index = 0; index < 10; index++) {
+            try (Trace trace = exportedProfiler.start("Loopback.request", gold)) {
+                if (index % 5 == 0) {
+                    trace.fail("boom");
+                }
+                try (Trace ignored = exportedProfiler.start("Loopback.query")) {
+                    // nothing to do
+                }
+            }
+        }
+        exporter = new ProfilerExporter();
+        exporter.init("localhost", port, 20, exportedProfiler);
+        exporter.start();
+
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (collector.getSources().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10); // the source is registered after its first frame is completely merged
+        }
+        assertEquals(1, collector.getSources().size());
+        PointStats request = waitForRuns(mergedProfiler, "Loopback.request", 10);
+        assertEquals(2, request.getNrOfFailures());
+        assertTrue(request.getMaxRunTime() > 0);
+        assertEquals(10, waitForRuns(mergedProfiler, "Loopback.query", 10).getNrOfRuns());
+        PointStats goldRequest = mergedProfiler.snapshotTags("Loopback.request", null).getPoint("tier=gold");
+        assertNotNull(goldRequest);
+        assertEquals(10, goldRequest.getNrOfRuns());
+        assertEquals(2, goldRequest.getNrOfFailures());
+
+        // the following pushes only carry the new executions
+        for (int index = 0; index < 5; index++) {
+            try (Trace ignored = exportedProfiler.start("Loopback.request")) {
+                // nothing to do
+            }
+        }
+        assertEquals(15, waitForRuns(mergedProfiler, "Loopback.request", 15).getNrOfRuns());
+        Thread.sleep(100); // a few more pushes, with no new executions
+        assertEquals(15, mergedProfiler.snapshot().getPoint("Loopback.request").getNrOfRuns());
+        assertEquals(10, mergedProfiler.snapshot().getPoint("Loopback.query").getNrOfRuns());
+        assertEquals(10, mergedProfiler.snapshotTags("Loopback.request", null).getPoint("tier=gold").getNrOfRuns());
+    }
+
+    @Test
+    public void frameRoundTripKeepsTheCounters() throws IOException {
+        Profiler profiler = new Profiler(false);
+        try (Trace trace = profiler.start("RoundTrip.point", TagSet.of("region", "eu"))) {
+            trace.fail("boom");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProfilerProtocol.writeFrame(new DataOutputStream(bytes), "source", 42, profiler.getExecCounters());
+        ProfilerProtocol.Frame frame = ProfilerProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("source", frame.getSource());
+        assertEquals(42, frame.getTimestamp());
+        List<ExecCounters> points = frame.getPoints();
+        assertEquals(2, points.size());
+        assertEquals("RoundTrip.point", points.get(0).getKey());
+        assertEquals("RoundTrip.point{region=eu}", points.get(1).getKey());
+        for (ExecCounters counters : points) {
+            assertEquals(1, counters.getNrOfRuns());
+            assertEquals(1, counters.getNrOfFailures());
+            assertEquals(1, LatencyHistogram.getTotalCount(counters.getFailureHistogramCounts()));
+        }
+    }
+
+    @Test
+    public void deltasOnlyCarryTheNewBuckets() {
+        Profiler profiler = new Profiler(false);
+        profiler.mergeExecCounters(counters("Delta.point", 3, 100, 100, 5000));
+        List<ExecCounters> first = profiler.getExecCounters();
+        profiler.mergeExecCounters(counters("Delta.point", 2, 5000, 7000000));
+        List<ExecCounters> second = profiler.getExecCounters(toMap(first));
+
+        ExecCounters delta = second.get(0).minus(first.get(0));
+        assertEquals(2, delta.getNrOfRuns());
+        long[] deltaCounts = delta.getHistogramCounts();
+        assertEquals(2, LatencyHistogram.getTotalCount(deltaCounts));
+        assertEquals(1, deltaCounts[LatencyHistogram.bucketIndex(5000)]);
+        assertEquals(1, deltaCounts[LatencyHistogram.bucketIndex(7000000)]);
+        assertEquals(2, delta.getHistogram().size());
+
+        // the counters of an unchanged point are not copied again
+        assertSame(second.get(0), profiler.getExecCounters(toMap(second)).get(0));
+    }
+
+    @Test
+    public void frameLargerThanTheLimitIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = frameHeader(bytes);
+        for (int index = 0; index < 4; index++) {
+            out.writeByte(0xFF); // a frame size of 2^35 - 1, followed by nothing
+        }
+        out.writeByte(0x7F);
+
+        assertRejected(bytes, "too large");
+    }
+
+    @Test
+    public void frameWithTooManyPointsIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = frameHeader(bytes);
+        out.writeByte(4); // a frame size of 4 bytes, holding a point count of 2^28 - 1
+        for (int index = 0; index < 3; index++) {
+            out.writeByte(0xFF);
+        }
+        out.writeByte(0x7F);
+
+        assertRejected(bytes, "too many points");
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static PointStats waitForRuns(Profiler profiler, String point, long runs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            PointStats stats = profiler.snapshot().getPoint(point);
+            if (stats != null && stats.getNrOfRuns() >= runs) {
+                return stats;
+            }
+            Thread.sleep(10);
+        }
+        PointStats stats = profiler.snapshot().getPoint(point);
+        assertNotNull("No statistics for " + point, stats);
+        assertEquals(runs, stats.getNrOfRuns());
+        return stats;
+    }
+
+    private static ExecCounters counters(String point, long runs, long... runTimes) {
+        long[] histogramCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        long totalRunTime = 0;
+        for (long runTime : runTimes) {
+            histogramCounts[LatencyHistogram.bucketIndex(runTime)]++;
+            totalRunTime += runTime;
+        }
+        return new ExecCounters(point, null, runs, totalRunTime, 0, 0, 0, 0, 0, histogramCounts, 0, 0, 0,
+                                new long[LatencyHistogram.BUCKET_COUNT]);
+    }
+
+    private static Map<String, ExecCounters> toMap(List<ExecCounters> countersList) {
+        Map<String, ExecCounters> result = new HashMap<>();
+        for (ExecCounters counters : countersList) {
+            result.put(counters.getKey(), counters);
+        }
+        return result;
+    }
+
+    private static DataOutputStream frameHeader(ByteArrayOutputStream bytes) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ProfilerProtocol.MAGIC);
+        out.writeByte(ProfilerProtocol.VERSION);
+        out.writeUTF("source");
+        out.writeLong(42);
+        return out;
+    }
+
+    private static void assertRejected(ByteArrayOutputStream bytes, String expectedMessage) {
+        try {
+            ProfilerProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("The frame should have been rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
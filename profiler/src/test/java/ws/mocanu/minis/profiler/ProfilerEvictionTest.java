@@ -0,0 +1,87 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ProfilerEvictionTest {
+
+    private static final long IDLE_MILLIS = 50;
+
+    @Test
+    public void runningPointsAreNotEvicted() throws InterruptedException {
+        Profiler profiler = new Profiler(false);
+        profiler.setMaxPoints(3);
+        profiler.setPointIdleEviction(IDLE_MILLIS);
+
+        try (Trace ignored = profiler.start("Svc.handle")) {
+            Thread.sleep(IDLE_MILLIS * 2);
+            assertEquals(0, profiler.evictIdlePoints());
+            for (String point : new String[] {"Svc.first", "Svc.second", "Svc.third"}) {
+                try (Trace ignored2 = profiler.start(point)) {
+                    // nothing to do
+                }
+            }
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshot();
+        assertEquals(1, snapshot.getPoint("Svc.handle").getNrOfRuns());
+        assertEquals("Svc.handle", snapshot.getPoint("Svc.first").getParentPoint());
+        assertEquals("Svc.handle", snapshot.getPoint("Svc.second").getParentPoint());
+        assertNull(snapshot.getPoint("Svc.third"));
+        assertEquals(1, snapshot.getPoint(Profiler.OVERFLOW_POINT).getNrOfRuns());
+        assertEquals(4, snapshot.getPoints().size());
+    }
+
+    @Test
+    public void idlePointsAreEvictedTogetherWithTheirChildren() throws InterruptedException {
+        Profiler profiler = new Profiler(false);
+        profiler.setMaxPoints(3);
+        profiler.setPointIdleEviction(IDLE_MILLIS);
+        try (Trace ignored = profiler.start("Svc.handle")) {
+            try (Trace ignored2 = profiler.start("Svc.query")) {
+                // nothing to do
+            }
+        }
+        try (Trace ignored = profiler.start("Svc.busy")) {
+            assertEquals(0, profiler.evictIdlePoints()); // the executions are seen for the first time
+            Thread.sleep(IDLE_MILLIS * 2);
+            assertEquals(2, profiler.evictIdlePoints());
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshot();
+        assertNull(snapshot.getPoint("Svc.handle"));
+        assertNull(snapshot.getPoint("Svc.query"));
+        assertEquals(1, snapshot.getPoint("Svc.busy").getNrOfRuns());
+
+        // the evicted points made room for new ones, which are registered normally
+        try (Trace ignored = profiler.start("Svc.handle")) {
+            try (Trace ignored2 = profiler.start("Svc.other")) {
+                // nothing to do
+            }
+        }
+        snapshot = profiler.snapshot();
+        assertNotNull(snapshot.getPoint("Svc.handle"));
+        assertEquals("Svc.handle", snapshot.getPoint("Svc.other").getParentPoint());
+        assertNull(snapshot.getPoint(Profiler.OVERFLOW_POINT));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfilerOutcomeTest {
+
+    @Test
+    public void exceptionsThrownByTimedCodeAreRecordedAsFailures() throws Exception {
+        Profiler profiler = new Profiler(false);
+        assertEquals("ok", profiler.time("Outcome.call", () -> "ok"));
+        IOException thrown = new IOException("boom");
+        try {
+            profiler.time("Outcome.call", () -> {
+                throw thrown;
+            });
+            fail("The exception should have been rethrown");
+        } catch (IOException e) {
+            assertSame(thrown, e);
+        }
+        profiler.time("Outcome.run", () -> {
+            // nothing to do
+        });
+        try {
+            profiler.time("Outcome.run", (Runnable) () -> {
+                throw new IllegalStateException("boom");
+            });
+            fail("The exception should have been rethrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshot();
+        assertEquals(2, snapshot.getPoint("Outcome.call").getNrOfRuns());
+        assertEquals(1, snapshot.getPoint("Outcome.call").getNrOfFailures());
+        assertEquals(2, snapshot.getPoint("Outcome.run").getNrOfRuns());
+        assertEquals(1, snapshot.getPoint("Outcome.run").getNrOfFailures());
+        List<String> lines = new ArrayList<>();
+        profiler.printOutcomeBreakdown((format, args) -> lines.add(String.format(format, args)));
+        assertTrue(lines.toString(), lines.stream().anyMatch(line -> line.contains(IOException.class.getName())));
+        assertTrue(lines.toString(), lines.stream().anyMatch(line -> line.contains(IllegalStateException.class.getName())));
+    }
+
+    @Test
+    public void failuresMarkedAfterTheTraceIsClosedAreNotRecorded() {
+        Profiler profiler = new Profiler(false);
+        Trace closedTrace = null;
+        try (Trace trace = profiler.start("Outcome.closed")) {
+            closedTrace = trace;
+            throw new IllegalStateException("boom");
+        } catch (IllegalStateException e) {
+            closedTrace.fail(e); // too late, the trace was closed before the catch clause
+        }
+
+        assertEquals(1, profiler.snapshot().getPoint("Outcome.closed").getNrOfRuns());
+        assertEquals(0, profiler.snapshot().getPoint("Outcome.closed").getNrOfFailures());
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ProfilerQueryTest {
+
+    /**
+     * A.b.c has the highest self time, A.d the most runs and B the highest p99.
+     */
+    private final ProfilerSnapshot snapshot = new ProfilerSnapshot(42, Arrays.asList(
+        stats("A", null, 1, 10, 1000, 200),
+        stats("A.b", "A", 2, 5, 600, 300),
+        stats("A.b.c", "A.b", 3, 1, 500, 500),
+        stats("A.d", "A", 2, 20, 100, 10),
+        stats("B", null, 1, 2, 250, 900)));
+
+    @Test
+    public void pointsComeInCallTreeOrderWithoutASortOrder() {
+        assertPoints(new ProfilerQuery(), "A", "A.b", "A.b.c", "A.d", "B");
+    }
+
+    @Test
+    public void pointsAreSortedDescendingAndCutToTheTop() {
+        assertPoints(new ProfilerQuery().orderBy(ProfilerQuery.Order.COUNT).top(2), "A.d", "A");
+        assertPoints(new ProfilerQuery().orderBy(ProfilerQuery.Order.SELF).top(1), "A.b.c");
+        assertPoints(new ProfilerQuery().orderBy(ProfilerQuery.Order.P99).top(2), "B", "A.b.c");
+        assertPoints(new ProfilerQuery().orderBy(ProfilerQuery.Order.TOTAL).top(0));
+        assertEquals(ProfilerQuery.Order.P99, ProfilerQuery.parseOrder("p99"));
+    }
+
+    @Test
+    public void pointsAreFilteredByNameAndDepth() {
+        assertPoints(new ProfilerQuery().withPrefix("A."), "A.b", "A.b.c", "A.d");
+        assertPoints(new ProfilerQuery().withRegex("A\\.[bd]"), "A.b", "A.d");
+        assertPoints(new ProfilerQuery().maxDepth(1), "A", "B");
+        assertPoints(new ProfilerQuery().withPrefix("A").maxDepth(2).orderBy(ProfilerQuery.Order.COUNT), "A.d", "A", "A.b");
+    }
+
+    @Test
+    public void subtreeIncludesItsRootAndCountsDepthFromIt() {
+        assertPoints(new ProfilerQuery().subtree("A.b"), "A.b", "A.b.c");
+        assertPoints(new ProfilerQuery().subtree("A").maxDepth(2), "A", "A.b", "A.d");
+        assertPoints(new ProfilerQuery().subtree("A").maxDepth(1), "A");
+        assertPoints(new ProfilerQuery().subtree("A").withPrefix("A.").orderBy(ProfilerQuery.Order.SELF), "A.b.c", "A.b", "A.d");
+        assertPoints(new ProfilerQuery().subtree("Missing"));
+    }
+
+    @Test
+    public void negativeLimitsAreRejected() {
+        try {
+            new ProfilerQuery().top(-1);
+            fail("A negative top should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new ProfilerQuery().maxDepth(-1);
+            fail("A negative depth should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static PointStats stats(String point, String parentPoint, int depth, long runs, long totalRunTime, long p99RunTime) {
+        return new PointStats(point, parentPoint, depth, runs, totalRunTime, p99RunTime / 2, p99RunTime, p99RunTime, p99RunTime);
+    }
+
+    private void assertPoints(ProfilerQuery query, String... expectedPoints) {
+        List<String> points = new ArrayList<>();
+        for (PointStats stats : query.run(snapshot)) {
+            points.add(stats.getPoint());
+        }
+        assertEquals(Arrays.asList(expectedPoints), points);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfilerSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoadKeepTheStatistics() throws IOException {
+        Profiler profiler = new Profiler(false);
+        for (int index = 0; index < 20; index++) {
+            try (Trace ignored = profiler.start("Snapshot.request")) {
+                try (Trace ignored2 = profiler.start("Snapshot.query \t with tabs")) {
+                    // nothing to do
+                }
+            }
+        }
+        ProfilerSnapshot saved = profiler.snapshot();
+        File file = folder.newFile("baseline.txt");
+        saved.save(file);
+        ProfilerSnapshot loaded = ProfilerSnapshot.load(file);
+
+        assertEquals(saved.getTimestamp(), loaded.getTimestamp());
+        assertEquals(saved.getPoints().size(), loaded.getPoints().size());
+        for (int index = 0; index < saved.getPoints().size(); index++) {
+            PointStats expected = saved.getPoints().get(index);
+            PointStats actual = loaded.getPoints().get(index);
+            assertEquals(expected.getPoint(), actual.getPoint());
+            assertEquals(expected.getNrOfRuns(), actual.getNrOfRuns());
+            assertEquals(expected.getTotalRunTime(), actual.getTotalRunTime());
+            assertEquals(expected.getP50RunTime(), actual.getP50RunTime());
+            assertEquals(expected.getP90RunTime(), actual.getP90RunTime());
+            assertEquals(expected.getP99RunTime(), actual.getP99RunTime());
+            assertEquals(expected.getMaxRunTime(), actual.getMaxRunTime());
+        }
+        assertEquals(20, loaded.getPoint("Snapshot.query \t with tabs").getNrOfRuns());
+
+        // a loaded snapshot is a usable baseline for the profiler it was taken from
+        SnapshotComparison comparison = new SnapshotComparison(loaded, profiler.snapshot(), new RegressionThresholds());
+        assertFalse(comparison.hasRegressions());
+        assertTrue(comparison.getMissingPoints().isEmpty());
+    }
+
+    @Test
+    public void loadRejectsInvalidLines() throws IOException {
+        assertInvalid(Arrays.asList("timestamp\t42", "10\t20\t30\tpoint"));
+        assertInvalid(Arrays.asList("timestamp\t42", "10\t20\t30\t40\t50\tsixty\tpoint"));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private void assertInvalid(List<String> lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        try {
+            ProfilerSnapshot.load(file);
+            fail("The snapshot should have been rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid profiler snapshot line"));
+        }
+    }
+
+}
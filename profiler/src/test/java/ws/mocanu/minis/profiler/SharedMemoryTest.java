@@ -0,0 +1,120 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SharedMemoryTest {
+
+    private static final long INTERVAL_MILLIS = 10;
+    private static final long WAIT_MILLIS = 10000;
+    private static final long IDLE_MILLIS = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readerSeesThePublishedPointsInTreeOrder() throws Exception {
+        Profiler profiler = new Profiler(false);
+        File file = folder.newFile("profiler.shm");
+        profiler.setSharedMemoryFile(file, 10, INTERVAL_MILLIS);
+        for (int index = 0; index < 3; index++) {
+            try (Trace ignored = profiler.start("Shm.request")) {
+                try (Trace ignored2 = profiler.start("Shm.query")) {
+                    // nothing to do
+                }
+            }
+        }
+
+        SharedMemoryReader reader = new SharedMemoryReader(file);
+        ProfilerSnapshot snapshot = waitForPoint(reader, "Shm.query");
+        assertEquals(2, snapshot.getPoints().size());
+        assertEquals("Shm.request", snapshot.getPoints().get(0).getPoint());
+        assertEquals(3, snapshot.getPoint("Shm.request").getNrOfRuns());
+        assertEquals("Shm.request", snapshot.getPoint("Shm.query").getParentPoint());
+        assertEquals(3, snapshot.getPoint("Shm.query").getNrOfRuns());
+        assertEquals(0, reader.getSkippedPoints());
+    }
+
+    @Test
+    public void slotsOfEvictedPointsAreRetiredAndReused() throws Exception {
+        Profiler profiler = new Profiler(false);
+        profiler.setPointIdleEviction(IDLE_MILLIS);
+        File file = folder.newFile("profiler.shm");
+        profiler.setSharedMemoryFile(file, 2, INTERVAL_MILLIS);
+        try (Trace ignored = profiler.start("Shm.idle")) {
+            // nothing to do
+        }
+        SharedMemoryReader reader = new SharedMemoryReader(file);
+        waitForPoint(reader, "Shm.idle");
+
+        try (Trace ignored = profiler.start("Shm.busy")) {
+            assertEquals(0, profiler.evictIdlePoints()); // the executions are seen for the first time
+            Thread.sleep(IDLE_MILLIS * 2);
+            assertEquals(1, profiler.evictIdlePoints());
+        }
+        ProfilerSnapshot snapshot = waitForPoint(reader, "Shm.busy");
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (snapshot.getPoint("Shm.idle") != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(INTERVAL_MILLIS);
+            snapshot = reader.readSnapshot();
+        }
+        assertNull(snapshot.getPoint("Shm.idle"));
+
+        // the retired slot is taken by a new point, with no slot left for a further one
+        try (Trace ignored = profiler.start("Shm.new")) {
+            // nothing to do
+        }
+        snapshot = waitForPoint(reader, "Shm.new");
+        assertEquals(1, snapshot.getPoint("Shm.new").getNrOfRuns());
+        assertEquals(2, snapshot.getPoints().size());
+        try (Trace ignored = profiler.start("Shm.another")) {
+            // nothing to do
+        }
+        deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (reader.getSkippedPoints() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(INTERVAL_MILLIS);
+        }
+        assertEquals(1, reader.getSkippedPoints());
+        assertNull(reader.readSnapshot().getPoint("Shm.another"));
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+
+    private static ProfilerSnapshot waitForPoint(SharedMemoryReader reader, String point) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            ProfilerSnapshot snapshot = reader.readSnapshot();
+            if (snapshot.getPoint(point) != null) {
+                return snapshot;
+            }
+            Thread.sleep(INTERVAL_MILLIS);
+        }
+        ProfilerSnapshot snapshot = reader.readSnapshot();
+        assertNotNull("No statistics for " + point, snapshot.getPoint(point));
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2019 Bogdan Mocanu (https://bogdan.mocanu.ws)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package ws.mocanu.minis.profiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TagSetTest {
+
+    @Test
+    public void tagSetsAreInterned() {
+        TagSet tags = TagSet.of("tier", "gold", "endpoint", "/users");
+        assertEquals("endpoint=/users,tier=gold", tags.toString());
+        assertSame(tags, TagSet.of("endpoint", "/users", "tier", "gold"));
+        assertSame(tags, TagSet.parse(tags.toString()));
+        assertSame(TagSet.OVERFLOW, TagSet.of("overflow", "true"));
+        assertSame(TagSet.OVERFLOW, TagSet.parse("overflow=true"));
+    }
+
+    @Test
+    public void explicitOverflowTagsShareTheOverflowRecord() {
+        Profiler profiler = new Profiler(false);
+        try (Trace ignored = profiler.start("Tags.point", TagSet.OVERFLOW)) {
+            // nothing to do
+        }
+        try (Trace ignored = profiler.start("Tags.point", TagSet.of("overflow", "true"))) {
+            // nothing to do
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshotTags("Tags.point", null);
+        assertEquals(1, snapshot.getPoints().size());
+        assertEquals(2, snapshot.getPoint(TagSet.OVERFLOW.toString()).getNrOfRuns());
+    }
+
+    @Test
+    public void tagSetsBeyondThePointLimitAreRecordedAsOverflow() {
+        Profiler profiler = new Profiler(false);
+        int extraTagSets = 5;
+        for (int index = 0; index < Profiler.MAX_TAG_SETS_PER_POINT + extraTagSets; index++) {
+            try (Trace ignored = profiler.start("Tags.point", TagSet.of("user", "u" + index))) {
+                // nothing to do
+            }
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshotTags("Tags.point", null);
+        assertEquals(Profiler.MAX_TAG_SETS_PER_POINT + 1, snapshot.getPoints().size());
+        assertEquals(1, snapshot.getPoint("user=u0").getNrOfRuns());
+        assertNull(snapshot.getPoint("user=u" + Profiler.MAX_TAG_SETS_PER_POINT));
+        assertEquals(extraTagSets, snapshot.getPoint(TagSet.OVERFLOW.toString()).getNrOfRuns());
+        assertEquals(Profiler.MAX_TAG_SETS_PER_POINT + extraTagSets, profiler.snapshot().getPoint("Tags.point").getNrOfRuns());
+    }
+
+    @Test
+    public void tagSetsCountTowardsTheMaxPoints() {
+        Profiler profiler = new Profiler(false);
+        profiler.setMaxPoints(3);
+        for (String tier : new String[] {"gold", "silver", "bronze"}) {
+            try (Trace ignored = profiler.start("Tags.point", TagSet.of("tier", tier))) {
+                // nothing to do
+            }
+        }
+
+        ProfilerSnapshot snapshot = profiler.snapshotTags("Tags.point", null);
+        assertNotNull(snapshot.getPoint("tier=gold"));
+        assertNotNull(snapshot.getPoint("tier=silver"));
+        assertNull(snapshot.getPoint("tier=bronze"));
+        assertEquals(1, snapshot.getPoint(TagSet.OVERFLOW.toString()).getNrOfRuns());
+    }
+
+}